@@ -0,0 +1,417 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An alias compiled into a reusable list of commands. Arguments entered after the alias are inserted wherever the
+ * alias uses $1..$n (individual arguments) or $* (all arguments). If an alias contains neither, any arguments are
+ * appended to its last command instead.
+ * <p>
+ * Nested aliases are inlined when the alias is compiled, so expanding an alias never needs to look up other aliases.
+ */
+final class AliasTemplate
+{
+    private static final int MAX_CACHED_EXPANSIONS = 16;
+    private static final int SLOT_LITERAL = -1, SLOT_ALL = 0;
+    private final String name, error;
+    private final String[] commands;
+    private final Segment[][] args;
+    private final boolean hasSlots;
+    // Most aliases are only ever run with a handful of different arguments, so expansions are memoized
+    private final Map<String, Expansion> cache = new LinkedHashMap<String, Expansion>(MAX_CACHED_EXPANSIONS, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Expansion> eldest)
+        {
+            return size() > MAX_CACHED_EXPANSIONS;
+        }
+    };
+
+    private AliasTemplate(String name, List<Line> lines, boolean hasSlots)
+    {
+        this.name = name;
+        this.hasSlots = hasSlots;
+        this.error = null;
+        commands = new String[lines.size()];
+        args = new Segment[lines.size()][];
+        for (int i = 0; i < lines.size(); i++)
+        {
+            final Line line = lines.get(i);
+            commands[i] = line.command;
+            args[i] = line.args.toArray(new Segment[line.args.size()]);
+        }
+    }
+
+    private AliasTemplate(String name, String error)
+    {
+        this.name = name;
+        this.error = error;
+        this.hasSlots = false;
+        commands = new String[0];
+        args = new Segment[0][];
+    }
+
+    /**
+     * Compiles every alias in {@code rawAliases}.
+     *
+     * @param rawAliases    The aliases to compile, with their lowercase names as keys and the commands they run
+     *                      (separated by ';') as values.
+     * @param knownCommands The names of all loaded commands, in lowercase. An alias that refers back to itself is
+     *                      treated as a call to the real command of the same name, if one exists.
+     *
+     * @return The compiled aliases, with the same keys as {@code rawAliases}. Each alias is compiled as if it were
+     *         the only one, so the result doesn't depend on the order aliases are compiled in. For example, with
+     *         'help' -> 'h' and 'h' -> 'help', 'help' runs the real Help command while 'h' is recursive, as the chain
+     *         starting from 'h' loops back to 'h', which isn't a command.
+     */
+    static Map<String, AliasTemplate> compileAll(Map<String, String> rawAliases, Collection<String> knownCommands)
+    {
+        final Map<String, AliasTemplate> shared = new HashMap<>(rawAliases.size() * 2);
+        final Map<String, AliasTemplate> compiled = new HashMap<>(rawAliases.size() * 2);
+        for (String alias : rawAliases.keySet())
+        {
+            compiled.put(alias, compile(alias, rawAliases, knownCommands, shared, new Visiting()));
+        }
+
+        return compiled;
+    }
+
+    // An alias that can't reach a loop (other than a call to the real command of the same name) compiles the same
+    // wherever it's reached from, so only those are shared between compilations
+    private static AliasTemplate compile(String alias, Map<String, String> rawAliases,
+                                         Collection<String> knownCommands, Map<String, AliasTemplate> shared,
+                                         Visiting visiting)
+    {
+        final AliasTemplate existing = shared.get(alias);
+        if (existing != null)
+        {
+            return existing;
+        }
+
+        final int depth = visiting.stack.size();
+        final int loopsBefore = visiting.loopsFound;
+        visiting.stack.add(alias);
+        final String raw = rawAliases.get(alias).trim();
+        final List<Line> lines = new ArrayList<>();
+        boolean hasSlots = false;
+        String error = null;
+
+        // RunCode needs its separators and $macros left alone
+        if (raw.toLowerCase().startsWith("runcode "))
+        {
+            lines.add(new Line("runcode", Collections.singletonList(new Segment(raw.substring(8).trim(), SLOT_LITERAL))));
+        }
+        else
+        {
+            final List<String> rawLines = new ArrayList<>();
+            for (String rawLine : raw.split(";"))
+            {
+                rawLine = rawLine.trim();
+                if (!rawLine.isEmpty())
+                {
+                    rawLines.add(rawLine);
+                }
+            }
+
+            for (int lineNum = 0; lineNum < rawLines.size(); lineNum++)
+            {
+                final String[] tokens = rawLines.get(lineNum).split("\\s+");
+                final String command = tokens[0].toLowerCase();
+                final List<List<Segment>> lineArgs = new ArrayList<>(tokens.length - 1);
+                for (int i = 1; i < tokens.length; i++)
+                {
+                    final List<Segment> token = parseToken(tokens[i]);
+                    hasSlots |= (token.size() > 1 || token.get(0).slot != SLOT_LITERAL);
+                    lineArgs.add(token);
+                }
+
+                // Inline nested aliases, unless that would recurse forever
+                final boolean isAlias = rawAliases.containsKey(command);
+                final int stackIndex = (isAlias ? visiting.stack.indexOf(command) : -1);
+                if (stackIndex >= 0)
+                {
+                    if (stackIndex != depth)
+                    {
+                        visiting.loopsFound++;
+                    }
+
+                    if (!knownCommands.contains(command))
+                    {
+                        final StringBuilder chain = new StringBuilder();
+                        for (String tmp : visiting.stack.subList(stackIndex, visiting.stack.size()))
+                        {
+                            chain.append(tmp).append(" -> ");
+                        }
+
+                        error = "Alias '" + alias + "' is recursive (" + chain + command + ")!";
+                        break;
+                    }
+                }
+                else if (isAlias)
+                {
+                    // A nested alias at the end of this one receives this alias' arguments if none were given
+                    if (lineArgs.isEmpty() && !hasSlots && lineNum == rawLines.size() - 1)
+                    {
+                        lineArgs.add(Collections.singletonList(Segment.ALL));
+                        hasSlots = true;
+                    }
+
+                    final AliasTemplate nested = compile(command, rawAliases, knownCommands, shared, visiting);
+                    if (nested.error != null)
+                    {
+                        error = nested.error;
+                        break;
+                    }
+
+                    nested.inlineInto(lines, lineArgs);
+                    continue;
+                }
+
+                lines.add(new Line(command, join(lineArgs)));
+            }
+        }
+
+        visiting.stack.remove(depth);
+        final AliasTemplate template = (error == null ? new AliasTemplate(alias, lines, hasSlots)
+                : new AliasTemplate(alias, error));
+        if (visiting.loopsFound == loopsBefore)
+        {
+            shared.put(alias, template);
+        }
+
+        return template;
+    }
+
+    // Splits a single argument into literal text and $1..$n/$* slots
+    private static List<Segment> parseToken(String token)
+    {
+        final List<Segment> segments = new ArrayList<>(1);
+        int literalStart = 0;
+        for (int i = 0; i < token.length() - 1; i++)
+        {
+            if (token.charAt(i) != '$')
+            {
+                continue;
+            }
+
+            final char next = token.charAt(i + 1);
+            int slotEnd = i + 1;
+            if (next == '*')
+            {
+                slotEnd++;
+            }
+            else
+            {
+                while (slotEnd < token.length() && Character.isDigit(token.charAt(slotEnd)))
+                {
+                    slotEnd++;
+                }
+
+                // Not a parameter, or $0 (which would clash with $*)
+                if (slotEnd == i + 1 || (slotEnd == i + 2 && next == '0'))
+                {
+                    continue;
+                }
+            }
+
+            if (i > literalStart)
+            {
+                segments.add(new Segment(token.substring(literalStart, i), SLOT_LITERAL));
+            }
+
+            segments.add(new Segment(null, (next == '*' ? SLOT_ALL : Integer.parseInt(token.substring(i + 1, slotEnd)))));
+            literalStart = slotEnd;
+            i = slotEnd - 1;
+        }
+
+        if (literalStart < token.length() || segments.isEmpty())
+        {
+            segments.add(new Segment(token.substring(literalStart), SLOT_LITERAL));
+        }
+
+        return segments;
+    }
+
+    private static List<Segment> join(List<List<Segment>> tokens)
+    {
+        final List<Segment> joined = new ArrayList<>();
+        for (int i = 0; i < tokens.size(); i++)
+        {
+            if (i > 0)
+            {
+                joined.add(Segment.SPACE);
+            }
+
+            joined.addAll(tokens.get(i));
+        }
+
+        return joined;
+    }
+
+    // Copies this alias' commands into an alias that uses it, binding its parameters to the arguments passed in
+    private void inlineInto(List<Line> lines, List<List<Segment>> params)
+    {
+        for (int i = 0; i < commands.length; i++)
+        {
+            final List<Segment> bound = new ArrayList<>();
+            for (Segment segment : args[i])
+            {
+                if (segment.slot == SLOT_LITERAL)
+                {
+                    bound.add(segment);
+                }
+                else if (segment.slot == SLOT_ALL)
+                {
+                    bound.addAll(join(params));
+                }
+                else if (segment.slot <= params.size())
+                {
+                    bound.addAll(params.get(segment.slot - 1));
+                }
+            }
+
+            // Implicit argument passing: all arguments go to the last command
+            if (!hasSlots && i == commands.length - 1 && !params.isEmpty())
+            {
+                if (!bound.isEmpty())
+                {
+                    bound.add(Segment.SPACE);
+                }
+
+                bound.addAll(join(params));
+            }
+
+            lines.add(new Line(commands[i], bound));
+        }
+    }
+
+    String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Returns why this alias failed to compile.
+     *
+     * @return The reason this alias can't be used, or {@code null} if it compiled successfully.
+     */
+    @Nullable
+    String getError()
+    {
+        return error;
+    }
+
+    /**
+     * Fills in this alias' parameters.
+     *
+     * @param rawArgs The arguments entered after the alias.
+     *
+     * @return The commands this alias runs and their arguments, or {@code null} if the alias failed to compile.
+     */
+    @Nullable
+    Expansion expand(String rawArgs)
+    {
+        if (error != null)
+        {
+            return null;
+        }
+
+        rawArgs = rawArgs.trim();
+        Expansion expansion = cache.get(rawArgs);
+        if (expansion != null)
+        {
+            return expansion;
+        }
+
+        final String[] params = (rawArgs.isEmpty() ? new String[0] : rawArgs.split("\\s+"));
+        final String[] expandedArgs = new String[commands.length], inputs = new String[commands.length];
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < commands.length; i++)
+        {
+            sb.setLength(0);
+            for (Segment segment : args[i])
+            {
+                if (segment.slot == SLOT_LITERAL)
+                {
+                    sb.append(segment.literal);
+                }
+                else if (segment.slot == SLOT_ALL)
+                {
+                    sb.append(rawArgs);
+                }
+                else if (segment.slot <= params.length)
+                {
+                    sb.append(params[segment.slot - 1]);
+                }
+            }
+
+            if (!hasSlots && i == commands.length - 1 && !rawArgs.isEmpty())
+            {
+                if (sb.length() > 0)
+                {
+                    sb.append(' ');
+                }
+
+                sb.append(rawArgs);
+            }
+
+            expandedArgs[i] = sb.toString().trim();
+            inputs[i] = (expandedArgs[i].isEmpty() ? commands[i] : commands[i] + " " + expandedArgs[i]);
+        }
+
+        expansion = new Expansion(commands, expandedArgs, inputs);
+        cache.put(rawArgs, expansion);
+        return expansion;
+    }
+
+    /**
+     * An alias with its parameters filled in. The arrays are shared between all users of this expansion and must not
+     * be modified.
+     */
+    static final class Expansion
+    {
+        final String[] commands, args, inputs;
+
+        private Expansion(String[] commands, String[] args, String[] inputs)
+        {
+            this.commands = commands;
+            this.args = args;
+            this.inputs = inputs;
+        }
+    }
+
+    private static final class Segment
+    {
+        private static final Segment SPACE = new Segment(" ", SLOT_LITERAL);
+        private static final Segment ALL = new Segment(null, SLOT_ALL);
+        private final String literal;
+        private final int slot;
+
+        private Segment(String literal, int slot)
+        {
+            this.literal = literal;
+            this.slot = slot;
+        }
+    }
+
+    // The aliases currently being compiled, and how many times one has led back to another
+    private static final class Visiting
+    {
+        private final List<String> stack = new ArrayList<>();
+        private int loopsFound = 0;
+    }
+
+    private static final class Line
+    {
+        private final String command;
+        private final List<Segment> args;
+
+        private Line(String command, List<Segment> args)
+        {
+            this.command = command;
+            this.args = args;
+        }
+    }
+}
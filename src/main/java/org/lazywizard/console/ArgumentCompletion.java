@@ -0,0 +1,278 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Tab completion for a command's arguments, built from the placeholders and keywords in its syntax. For example,
+ * {@code setrelation all|<faction> [optionalTowardsFaction] <amount>} completes its first argument from 'all' and
+ * every faction id, its second from every faction id, and doesn't complete its third.
+ * <p>
+ * Each source of completions is a {@link SortedIds}, so completing an argument binary searches each source for the
+ * ids starting with what was typed, then steps to the one sorting after the current argument. Ids are never copied,
+ * filtered or sorted per keypress.
+ */
+final class ArgumentCompletion
+{
+    static final ArgumentCompletion NONE = new ArgumentCompletion(new Slot[0]);
+    private final Slot[] slots;
+
+    private ArgumentCompletion(Slot[] slots)
+    {
+        this.slots = slots;
+    }
+
+    /**
+     * Reads the argument types and keywords out of a command's syntax. Placeholders in brackets are looked up with
+     * {@link ArgumentType#forPlaceholder(String)}, including each alternative in a group like {@code <itemId|wingId>}.
+     * Words outside of brackets are keywords, and anything else is ignored.
+     */
+    static ArgumentCompletion parse(String syntax)
+    {
+        final String[] words = syntax.replace("(no arguments)", "").trim().split("\\s+");
+        final List<Slot> slots = new ArrayList<>();
+        boolean hasCompletions = false;
+        // The first word is always the command's name
+        for (int i = 1; i < words.length; i++)
+        {
+            final Set<ArgumentType> types = EnumSet.noneOf(ArgumentType.class);
+            final List<String> keywords = new ArrayList<>();
+            for (String alternative : splitAlternatives(words[i]))
+            {
+                if (alternative.isEmpty())
+                {
+                    continue;
+                }
+
+                // Brackets can group several placeholders, as in <itemId|wingId|weaponId>
+                final char first = alternative.charAt(0);
+                if (first == '<' || first == '[' || first == '(')
+                {
+                    for (String placeholder : alternative.split("\\|"))
+                    {
+                        final ArgumentType type = ArgumentType.forPlaceholder(placeholder);
+                        if (type != null)
+                        {
+                            types.add(type);
+                        }
+                    }
+                }
+                else if (alternative.matches("[A-Za-z0-9_]+"))
+                {
+                    keywords.add(alternative);
+                }
+            }
+
+            final Slot slot = new Slot(types.toArray(new ArgumentType[types.size()]),
+                    keywords.isEmpty() ? SortedIds.EMPTY : new SortedIds(keywords));
+            hasCompletions |= (slot.types.length > 0 || slot.keywords.size() > 0);
+            slots.add(slot);
+        }
+
+        return (hasCompletions ? new ArgumentCompletion(slots.toArray(new Slot[slots.size()])) : NONE);
+    }
+
+    // Splits a syntax word on the |s that aren't inside brackets
+    private static List<String> splitAlternatives(String word)
+    {
+        final List<String> alternatives = new ArrayList<>(2);
+        int depth = 0, start = 0;
+        for (int i = 0; i < word.length(); i++)
+        {
+            final char ch = word.charAt(i);
+            if (ch == '<' || ch == '[' || ch == '(')
+            {
+                depth++;
+            }
+            else if (ch == '>' || ch == ']' || ch == ')')
+            {
+                depth = Math.max(0, depth - 1);
+            }
+            else if (ch == '|' && depth == 0)
+            {
+                alternatives.add(word.substring(start, i));
+                start = i + 1;
+            }
+        }
+
+        alternatives.add(word.substring(start));
+        return alternatives;
+    }
+
+    /**
+     * Finds what to replace an argument with when tab is pressed.
+     *
+     * @param argIndex    Which argument is being completed, starting at 0 for the first after the command's name.
+     * @param input       The text being edited.
+     * @param start       Where the argument starts in {@code input}.
+     * @param prefixEnd   Where the prefix to complete ends (the cursor position).
+     * @param wordEnd     Where the argument ends. It's what the previous tab press completed to, if any.
+     * @param isBackwards Whether to cycle to the previous match instead of the next one.
+     *
+     * @return The id to replace the argument with, or {@code null} if nothing starts with the prefix.
+     */
+    @Nullable
+    String complete(int argIndex, CharSequence input, int start, int prefixEnd, int wordEnd, boolean isBackwards)
+    {
+        if (argIndex >= slots.length)
+        {
+            return null;
+        }
+
+        final Slot slot = slots[argIndex];
+        final Match match = new Match(isBackwards);
+        slot.keywords.complete(input, start, prefixEnd, wordEnd, match);
+        for (ArgumentType type : slot.types)
+        {
+            type.getSortedIds().complete(input, start, prefixEnd, wordEnd, match);
+        }
+
+        return match.getResult();
+    }
+
+    private static final class Slot
+    {
+        private final ArgumentType[] types;
+        private final SortedIds keywords;
+
+        private Slot(ArgumentType[] types, SortedIds keywords)
+        {
+            this.types = types;
+            this.keywords = keywords;
+        }
+    }
+
+    // The best completion found across all of an argument's sources
+    private static final class Match
+    {
+        private final boolean isBackwards;
+        @Nullable private String next, nextKey, wrap, wrapKey;
+
+        private Match(boolean isBackwards)
+        {
+            this.isBackwards = isBackwards;
+        }
+
+        // Going forwards the lowest key wins, going backwards the highest; ties keep the earlier source
+        private boolean isBetter(String key, @Nullable String current)
+        {
+            return current == null || (isBackwards ? key.compareTo(current) > 0 : key.compareTo(current) < 0);
+        }
+
+        @Nullable
+        private String getResult()
+        {
+            return (next != null ? next : wrap);
+        }
+    }
+
+    /**
+     * A set of ids sorted by their lowercase form, for finding every id starting with a prefix by binary search.
+     * Ids that only differ by case are kept once.
+     */
+    static final class SortedIds
+    {
+        static final SortedIds EMPTY = new SortedIds(Collections.<String>emptyList());
+        private final String[] ids, lowercaseIds;
+
+        SortedIds(Collection<String> toSort)
+        {
+            final SortedMap<String, String> sorted = new TreeMap<>();
+            for (String id : toSort)
+            {
+                final String lowercase = new String(JaroWinkler.toLowerCase(id));
+                if (!sorted.containsKey(lowercase))
+                {
+                    sorted.put(lowercase, id);
+                }
+            }
+
+            lowercaseIds = sorted.keySet().toArray(new String[sorted.size()]);
+            ids = sorted.values().toArray(new String[sorted.size()]);
+        }
+
+        int size()
+        {
+            return ids.length;
+        }
+
+        private void complete(CharSequence input, int start, int prefixEnd, int wordEnd, Match match)
+        {
+            // Everything starting with the prefix
+            final int rangeStart = search(input, start, prefixEnd, false, false),
+                    rangeEnd = search(input, start, prefixEnd, true, true);
+            if (rangeStart >= rangeEnd)
+            {
+                return;
+            }
+
+            // Where the current argument sorts among them
+            final int index;
+            if (match.isBackwards)
+            {
+                index = Math.max(rangeStart, search(input, start, wordEnd, false, false)) - 1;
+                if (index >= rangeStart && match.isBetter(lowercaseIds[index], match.nextKey))
+                {
+                    match.next = ids[index];
+                    match.nextKey = lowercaseIds[index];
+                }
+            }
+            else
+            {
+                index = Math.max(rangeStart, search(input, start, wordEnd, true, false));
+                if (index < rangeEnd && match.isBetter(lowercaseIds[index], match.nextKey))
+                {
+                    match.next = ids[index];
+                    match.nextKey = lowercaseIds[index];
+                }
+            }
+
+            // Used to cycle back around when no source has anything after the current argument
+            final int wrapIndex = (match.isBackwards ? rangeEnd - 1 : rangeStart);
+            if (match.isBetter(lowercaseIds[wrapIndex], match.wrapKey))
+            {
+                match.wrap = ids[wrapIndex];
+                match.wrapKey = lowercaseIds[wrapIndex];
+            }
+        }
+
+        /**
+         * Returns the first id sorting after the lowercase of {@code input[from, to)}. Ids equal to it are included
+         * unless {@code isAfter} is set, and ids starting with it are counted as equal if {@code isPrefix} is set.
+         */
+        private int search(CharSequence input, int from, int to, boolean isAfter, boolean isPrefix)
+        {
+            int low = 0, high = lowercaseIds.length;
+            while (low < high)
+            {
+                final int mid = (low + high) >>> 1;
+                final int cmp = compare(lowercaseIds[mid], input, from, to, isPrefix);
+                if (cmp < 0 || (cmp == 0 && isAfter)) low = mid + 1;
+                else high = mid;
+            }
+
+            return low;
+        }
+
+        private static int compare(String lowercaseId, CharSequence input, int from, int to, boolean isPrefix)
+        {
+            final int length = to - from, shared = Math.min(lowercaseId.length(), length);
+            for (int i = 0; i < shared; i++)
+            {
+                final char ch = Character.toLowerCase(input.charAt(from + i));
+                if (lowercaseId.charAt(i) != ch)
+                {
+                    return lowercaseId.charAt(i) - ch;
+                }
+            }
+
+            if (isPrefix && lowercaseId.length() >= length)
+            {
+                return 0;
+            }
+
+            return lowercaseId.length() - length;
+        }
+    }
+}
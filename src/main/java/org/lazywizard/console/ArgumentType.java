@@ -0,0 +1,214 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.campaign.StarSystemAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.combat.ShipHullSpecAPI;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * The kinds of ids a command argument can take. A command declares the type of each argument through placeholders in
+ * the 'syntax' column of commands.csv (for example, {@code addweapon <weaponId> [optionalAmount]}), which lets the
+ * console overlay tab-complete that argument.
+ * <p>
+ * Placeholders are matched ignoring case and any 'optional' prefix. Each type's ids are loaded and sorted the first
+ * time they're needed after a save is loaded, then reused for every completion until the next load.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public enum ArgumentType
+{
+    /**
+     * Any ship variant, including the empty "_Hull" variants. Placeholder: {@code <variantId>}.
+     */
+    VARIANT("variantid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    return Global.getSettings().getAllVariantIds();
+                }
+            },
+    /**
+     * The base id of a ship hull. Placeholder: {@code <hullId>}.
+     */
+    HULL("hullid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    final List<String> ids = new ArrayList<>();
+                    for (ShipHullSpecAPI spec : Global.getSettings().getAllShipHullSpecs())
+                    {
+                        ids.add(spec.getHullId());
+                    }
+
+                    return ids;
+                }
+            },
+    /**
+     * Placeholder: {@code <weaponId>}.
+     */
+    WEAPON("weaponid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    return Global.getSector().getAllWeaponIds();
+                }
+            },
+    /**
+     * A fighter wing (LPC). Placeholder: {@code <wingId>}.
+     */
+    WING("wingid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    return Global.getSector().getAllFighterWingIds();
+                }
+            },
+    /**
+     * Placeholders: {@code <faction>}, {@code <factionId>}, {@code <towardsFaction>}.
+     */
+    FACTION("faction", "factionid", "towardsfaction")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    final List<String> ids = new ArrayList<>();
+                    for (FactionAPI faction : Global.getSector().getAllFactions())
+                    {
+                        ids.add(faction.getId());
+                    }
+
+                    return ids;
+                }
+            },
+    /**
+     * Placeholder: {@code <marketId>}.
+     */
+    MARKET("marketid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    final List<String> ids = new ArrayList<>();
+                    for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+                    {
+                        ids.add(market.getId());
+                    }
+
+                    return ids;
+                }
+            },
+    /**
+     * A star system's id. Placeholders: {@code <system>}, {@code <systemId>}.
+     */
+    SYSTEM("system", "systemid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    final List<String> ids = new ArrayList<>();
+                    for (StarSystemAPI system : Global.getSector().getStarSystems())
+                    {
+                        ids.add(system.getId());
+                    }
+
+                    return ids;
+                }
+            },
+    /**
+     * Placeholders: {@code <itemId>}, {@code <commodityId>}.
+     */
+    COMMODITY("itemid", "commodityid")
+            {
+                @Override
+                protected Collection<String> loadIds()
+                {
+                    return Global.getSector().getEconomy().getAllCommodityIds();
+                }
+            };
+
+    private static final Logger Log = Global.getLogger(ArgumentType.class);
+    private static final Map<String, ArgumentType> byPlaceholder = new HashMap<>();
+    private final String[] placeholders;
+    @Nullable private ArgumentCompletion.SortedIds ids = null;
+
+    static
+    {
+        for (ArgumentType type : values())
+        {
+            for (String placeholder : type.placeholders)
+            {
+                byPlaceholder.put(placeholder, type);
+            }
+        }
+    }
+
+    ArgumentType(String... placeholders)
+    {
+        this.placeholders = placeholders;
+    }
+
+    /**
+     * @return Every id an argument of this type can take, in any order.
+     */
+    protected abstract Collection<String> loadIds();
+
+    /**
+     * Returns the argument type a syntax placeholder stands for.
+     *
+     * @param placeholder The placeholder, with or without its surrounding brackets and 'optional' prefix.
+     *
+     * @return The matching {@link ArgumentType}, or {@code null} if the placeholder isn't a known type.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public static ArgumentType forPlaceholder(String placeholder)
+    {
+        String name = placeholder.replaceAll("[<>\\[\\]()]", "").toLowerCase(Locale.ROOT);
+        if (name.startsWith("optional"))
+        {
+            name = name.substring("optional".length());
+        }
+
+        return byPlaceholder.get(name);
+    }
+
+    // Called by ConsoleModPlugin; factions, markets and systems differ between saves
+    static void clearCache()
+    {
+        for (ArgumentType type : values())
+        {
+            type.ids = null;
+        }
+    }
+
+    // Built on first use; only called from the main thread
+    ArgumentCompletion.SortedIds getSortedIds()
+    {
+        if (ids == null)
+        {
+            try
+            {
+                ids = new ArgumentCompletion.SortedIds(loadIds());
+            }
+            catch (Exception ex)
+            {
+                // Some ids can't be loaded outside of the campaign; try again next time
+                Log.warn("Failed to load ids for argument type " + name(), ex);
+                return ArgumentCompletion.SortedIds.EMPTY;
+            }
+        }
+
+        return ids;
+    }
+}
@@ -0,0 +1,191 @@
+package org.lazywizard.console;
+
+import org.lazywizard.console.CommandStore.StoredCommand;
+
+import java.util.*;
+
+/**
+ * An inverted index over each command's name, tags, syntax and help text, used by {@code help search}. Built by
+ * {@link CommandStore} whenever commands are reloaded.
+ * <p>
+ * Every word in a command is lowercased and counted. The index keeps each distinct word once, sorted, along with the
+ * commands containing it and how often. Looking up a search word binary searches for the range of indexed words it is
+ * a prefix of, so 'fleet' also finds 'fleets' and 'fleetpoints', and only the commands in those words' postings are
+ * ever visited.
+ */
+final class CommandIndex
+{
+    // Words in a command's name or tags say more about what it does than its help text
+    private static final int NAME_WEIGHT = 4, TAG_WEIGHT = 2, TEXT_WEIGHT = 1;
+    private final List<String> names;
+    private final String[] terms;
+    private final int[][] postings, weights;
+
+    /**
+     * @param commands The commands to index, sorted by name. Commands with equal scores are ranked in this order.
+     */
+    CommandIndex(List<StoredCommand> commands)
+    {
+        final SortedMap<String, Map<Integer, Integer>> index = new TreeMap<>();
+        final List<String> names = new ArrayList<>(commands.size());
+        for (int i = 0; i < commands.size(); i++)
+        {
+            final StoredCommand command = commands.get(i);
+            names.add(command.getName());
+            addWords(index, i, command.getName(), NAME_WEIGHT);
+            for (String tag : command.getTags())
+            {
+                addWords(index, i, tag, TAG_WEIGHT);
+            }
+
+            addWords(index, i, command.getSyntax(), TEXT_WEIGHT);
+            addWords(index, i, command.getHelp(), TEXT_WEIGHT);
+        }
+
+        this.names = names;
+        terms = index.keySet().toArray(new String[index.size()]);
+        postings = new int[terms.length][];
+        weights = new int[terms.length][];
+        int termIndex = 0;
+        for (Map<Integer, Integer> withTerm : index.values())
+        {
+            final int[] docs = new int[withTerm.size()], counts = new int[withTerm.size()];
+            int i = 0;
+            for (Map.Entry<Integer, Integer> entry : withTerm.entrySet())
+            {
+                docs[i] = entry.getKey();
+                counts[i] = entry.getValue();
+                i++;
+            }
+
+            postings[termIndex] = docs;
+            weights[termIndex] = counts;
+            termIndex++;
+        }
+    }
+
+    private static void addWords(SortedMap<String, Map<Integer, Integer>> index, int doc, String text, int weight)
+    {
+        for (String word : split(text))
+        {
+            Map<Integer, Integer> withWord = index.get(word);
+            if (withWord == null)
+            {
+                withWord = new HashMap<>();
+                index.put(word, withWord);
+            }
+
+            final Integer count = withWord.get(doc);
+            withWord.put(doc, (count == null ? weight : count + weight));
+        }
+    }
+
+    // Lowercase runs of letters and digits; everything else separates words
+    static List<String> split(String text)
+    {
+        final List<String> words = new ArrayList<>();
+        final int length = text.length();
+        int i = 0;
+        while (i < length)
+        {
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            final int start = i;
+            while (i < length && Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i > start)
+            {
+                words.add(text.substring(start, i).toLowerCase());
+            }
+        }
+
+        return words;
+    }
+
+    /**
+     * Finds every command containing all of the words in a query (or words starting with them).
+     *
+     * @param query The words to search for, separated by spaces or punctuation.
+     *
+     * @return The names of the matching commands, the most relevant first. A command's relevance is how often the
+     *         query's words appear in it, weighted towards its name and tags.
+     */
+    List<String> search(String query)
+    {
+        final List<String> words = split(query);
+        if (words.isEmpty())
+        {
+            return Collections.emptyList();
+        }
+
+        // Only commands containing the first word can match, so later words only update those
+        final int[] scores = new int[names.size()], matchedWords = new int[names.size()];
+        int numCandidates = 0;
+        for (int w = 0; w < words.size(); w++)
+        {
+            final String word = words.get(w);
+            final int rangeStart = lowerBound(word, false), rangeEnd = lowerBound(word, true);
+            for (int t = rangeStart; t < rangeEnd; t++)
+            {
+                final int[] docs = postings[t], counts = weights[t];
+                for (int i = 0; i < docs.length; i++)
+                {
+                    final int doc = docs[i];
+                    if (matchedWords[doc] == w)
+                    {
+                        // First of this word's terms found in this document
+                        matchedWords[doc] = w + 1;
+                        if (w == 0) numCandidates++;
+                        scores[doc] += counts[i];
+                    }
+                    else if (matchedWords[doc] == w + 1)
+                    {
+                        scores[doc] += counts[i];
+                    }
+                }
+            }
+        }
+
+        final List<Integer> found = new ArrayList<>(numCandidates);
+        for (int doc = 0; doc < matchedWords.length; doc++)
+        {
+            if (matchedWords[doc] == words.size())
+            {
+                found.add(doc);
+            }
+        }
+
+        // Stable, so equal scores stay in alphabetical order
+        Collections.sort(found, new Comparator<Integer>()
+        {
+            @Override
+            public int compare(Integer o1, Integer o2)
+            {
+                return Integer.compare(scores[o2], scores[o1]);
+            }
+        });
+
+        final List<String> results = new ArrayList<>(found.size());
+        for (Integer doc : found)
+        {
+            results.add(names.get(doc));
+        }
+
+        return results;
+    }
+
+    // The first term not sorting before word, or if isPrefixEnd, the first term after every term starting with word
+    private int lowerBound(String word, boolean isPrefixEnd)
+    {
+        int low = 0, high = terms.length;
+        while (low < high)
+        {
+            final int mid = (low + high) >>> 1;
+            final String term = terms[mid];
+            final boolean isBefore = (isPrefixEnd ? term.startsWith(word) || term.compareTo(word) < 0
+                    : term.compareTo(word) < 0);
+            if (isBefore) low = mid + 1;
+            else high = mid;
+        }
+
+        return low;
+    }
+}
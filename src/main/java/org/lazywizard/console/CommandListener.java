@@ -9,6 +9,10 @@ import org.lazywizard.console.BaseCommand.CommandResult;
  * Provides an interface to listen for command execution, with the option to intercept the command and execute your own
  * code instead. Listeners are registered in {@code data/console/command_listeners.csv}.
  * <p>
+ * By default a listener is notified about every command that is run. If your listener only cares about specific
+ * commands, list those commands (or their tags) in the optional {@code commands} column of the CSV; the listener
+ * will then only be called for matching commands, and other commands won't pay any cost for it.
+ * <p>
  * <b>Important performance note:</b> {@link CommandListener}s are persistent through the entire game session, so be
  * careful with your memory management!
  *
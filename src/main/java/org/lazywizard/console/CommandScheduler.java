@@ -0,0 +1,351 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Logger;
+import org.lazywizard.console.BaseCommand.CommandContext;
+import org.lazywizard.console.BaseCommand.CommandResult;
+import org.lazywizard.console.CommandStore.StoredCommand;
+
+import java.util.*;
+
+/**
+ * Runs console commands after a delay, or repeatedly at a fixed interval. Used by the Schedule, Every and Tasks
+ * commands.
+ * <p>
+ * Tasks are stored in a hashed timer wheel that is advanced every frame by {@link Console#advance(ConsoleListener)},
+ * so scheduling, cancelling and expiring a task are all constant time no matter how many tasks exist, and frames
+ * without any tasks due only cost a few arithmetic operations. Delays are measured in real time.
+ * <p>
+ * Each task only runs in the contexts its command can be used in (or, for multiple commands, the contexts it was
+ * scheduled in: campaign or combat). A one-off task that comes due in the wrong context waits until the player
+ * returns to the right one; a repeating task just skips that run.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class CommandScheduler
+{
+    private static final Logger Log = Global.getLogger(CommandScheduler.class);
+    private static final long TICK_NANOS = 50_000_000L; // 50ms resolution
+    private static final int WHEEL_SIZE = 512; // Must be a power of two
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    // Each slot is the head of a doubly linked list of tasks, so tasks can be removed without searching
+    private static final ScheduledTask[] wheel = new ScheduledTask[WHEEL_SIZE];
+    private static final Map<Integer, ScheduledTask> tasks = new LinkedHashMap<>();
+    private static final List<ScheduledTask> expired = new ArrayList<>();
+    private static long currentTick = 0L, lastAdvance = -1L, unusedNanos = 0L;
+    private static int nextId = 1;
+
+    /**
+     * Schedules a command to be run later.
+     *
+     * @param input    The command(s) to run, as the player would enter them.
+     * @param delay    How many seconds until the command runs.
+     * @param interval How many seconds between runs after the first, or 0 to only run once.
+     * @param context  The context the command was scheduled in.
+     *
+     * @return The ID of the new task, used to cancel it.
+     */
+    public static int schedule(String input, float delay, float interval, CommandContext context)
+    {
+        final ScheduledTask task = new ScheduledTask(nextId++, input.trim(), toTicks(interval),
+                getContextMask(input, context));
+        tasks.put(task.id, task);
+        insert(task, toTicks(delay));
+        return task.id;
+    }
+
+    /**
+     * Cancels a scheduled task.
+     *
+     * @param id The ID of the task to cancel.
+     *
+     * @return {@code true} if the task existed and was cancelled, {@code false} otherwise.
+     */
+    public static boolean cancel(int id)
+    {
+        final ScheduledTask task = tasks.remove(id);
+        if (task == null)
+        {
+            return false;
+        }
+
+        unlink(task);
+        return true;
+    }
+
+    /**
+     * Cancels every scheduled task.
+     *
+     * @return How many tasks were cancelled.
+     */
+    public static int cancelAll()
+    {
+        final int numCancelled = tasks.size();
+        tasks.clear();
+        Arrays.fill(wheel, null);
+        return numCancelled;
+    }
+
+    /**
+     * Returns all scheduled tasks, in the order they were scheduled.
+     *
+     * @return A {@link List} of all scheduled tasks.
+     */
+    public static List<ScheduledTask> getTasks()
+    {
+        return new ArrayList<>(tasks.values());
+    }
+
+    private static long toTicks(float seconds)
+    {
+        return (seconds <= 0f ? 0L : (long) Math.ceil(seconds * 1_000_000_000d / TICK_NANOS));
+    }
+
+    // Commands only run where they can be used; multiple commands run where they were scheduled (campaign or combat)
+    private static int getContextMask(String input, CommandContext scheduledIn)
+    {
+        final String trimmed = input.trim();
+        if (!trimmed.contains(Console.getSettings().getCommandSeparator()))
+        {
+            final int nameEnd = trimmed.indexOf(' ');
+            final StoredCommand command = CommandStore.retrieveCommand(
+                    nameEnd < 0 ? trimmed : trimmed.substring(0, nameEnd));
+            if (command != null)
+            {
+                int mask = 0;
+                for (CommandContext context : CommandContext.values())
+                {
+                    if (CommandStore.isApplicable(command, context))
+                    {
+                        mask |= toMask(context);
+                    }
+                }
+
+                return mask;
+            }
+        }
+
+        int mask = 0;
+        for (CommandContext context : CommandContext.values())
+        {
+            if (context.isInCampaign() == scheduledIn.isInCampaign())
+            {
+                mask |= toMask(context);
+            }
+        }
+
+        return mask;
+    }
+
+    private static int toMask(CommandContext context)
+    {
+        return 1 << context.ordinal();
+    }
+
+    private static void insert(ScheduledTask task, long ticks)
+    {
+        // A task always waits at least one tick, so tasks scheduled while tasks are running don't run immediately
+        ticks = Math.max(1L, ticks);
+        task.dueTick = currentTick + ticks;
+        task.rounds = (ticks - 1) / WHEEL_SIZE;
+
+        final int slot = (int) (task.dueTick & WHEEL_MASK);
+        task.prev = null;
+        task.next = wheel[slot];
+        if (task.next != null)
+        {
+            task.next.prev = task;
+        }
+
+        wheel[slot] = task;
+        task.slot = slot;
+    }
+
+    private static void unlink(ScheduledTask task)
+    {
+        if (task.slot < 0)
+        {
+            return;
+        }
+
+        if (task.prev != null)
+        {
+            task.prev.next = task.next;
+        }
+        else
+        {
+            wheel[task.slot] = task.next;
+        }
+
+        if (task.next != null)
+        {
+            task.next.prev = task.prev;
+        }
+
+        task.prev = task.next = null;
+        task.slot = -1;
+    }
+
+    // Called by Console.advance() every frame
+    static void advance(CommandContext context)
+    {
+        final long now = System.nanoTime();
+        if (lastAdvance < 0L)
+        {
+            lastAdvance = now;
+            return;
+        }
+
+        unusedNanos += now - lastAdvance;
+        lastAdvance = now;
+        final long elapsedTicks = unusedNanos / TICK_NANOS;
+        unusedNanos -= elapsedTicks * TICK_NANOS;
+
+        // Nothing to do, so skip straight to the current tick
+        if (tasks.isEmpty())
+        {
+            currentTick += elapsedTicks;
+            return;
+        }
+
+        for (long i = 0; i < elapsedTicks; i++)
+        {
+            currentTick++;
+            ScheduledTask task = wheel[(int) (currentTick & WHEEL_MASK)];
+            while (task != null)
+            {
+                final ScheduledTask next = task.next;
+                if (task.rounds > 0)
+                {
+                    task.rounds--;
+                }
+                else
+                {
+                    unlink(task);
+                    expired.add(task);
+                }
+
+                task = next;
+            }
+        }
+
+        // Tasks are run after the wheel is updated, as they might schedule or cancel other tasks
+        final int contextMask = toMask(context);
+        for (int i = 0; i < expired.size(); i++)
+        {
+            final ScheduledTask task = expired.get(i);
+            if (!tasks.containsKey(task.id))
+            {
+                continue;
+            }
+
+            if ((task.contextMask & contextMask) == 0)
+            {
+                // One-off tasks wait until they can run, repeating tasks wait for their next run
+                insert(task, (task.interval > 0L ? task.interval : 1L));
+                continue;
+            }
+
+            Log.debug("Running scheduled task " + task.id + ": " + task.input);
+            final CommandResult result = Console.runScheduledInput(task.input, context);
+            task.timesRun++;
+            if (result != CommandResult.SUCCESS)
+            {
+                Log.debug("Scheduled task " + task.id + " returned " + result);
+            }
+
+            // The task may have cancelled itself
+            if (!tasks.containsKey(task.id))
+            {
+                continue;
+            }
+
+            if (task.interval > 0L)
+            {
+                insert(task, task.interval);
+            }
+            else
+            {
+                tasks.remove(task.id);
+            }
+        }
+
+        expired.clear();
+    }
+
+    /**
+     * A command that has been scheduled to run later.
+     */
+    public static final class ScheduledTask
+    {
+        private final int id, contextMask;
+        private final String input;
+        private final long interval;
+        private long dueTick, rounds;
+        private int slot = -1, timesRun = 0;
+        private ScheduledTask prev, next;
+
+        private ScheduledTask(int id, String input, long interval, int contextMask)
+        {
+            this.id = id;
+            this.input = input;
+            this.interval = interval;
+            this.contextMask = contextMask;
+        }
+
+        /**
+         * @return This task's ID, used to cancel it.
+         */
+        public int getId()
+        {
+            return id;
+        }
+
+        /**
+         * @return The command(s) this task runs.
+         */
+        public String getInput()
+        {
+            return input;
+        }
+
+        /**
+         * @return How many seconds between runs of this task, or 0 if it only runs once.
+         */
+        public float getInterval()
+        {
+            return interval * (TICK_NANOS / 1_000_000_000f);
+        }
+
+        /**
+         * @return How many seconds until this task next runs (if it's in a context where it can).
+         */
+        public float getTimeUntilNextRun()
+        {
+            return Math.max(0L, dueTick - currentTick) * (TICK_NANOS / 1_000_000_000f);
+        }
+
+        /**
+         * @return How many times this task has been run.
+         */
+        public int getTimesRun()
+        {
+            return timesRun;
+        }
+
+        /**
+         * @param context The context to check.
+         *
+         * @return Whether this task is allowed to run in {@code context}.
+         */
+        public boolean canRunIn(CommandContext context)
+        {
+            return (contextMask & toMask(context)) != 0;
+        }
+    }
+
+    private CommandScheduler()
+    {
+    }
+}
@@ -0,0 +1,292 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.EveryFrameScript;
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Level;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.BaseCommand.CommandContext;
+import org.lazywizard.console.BaseCommand.CommandResult;
+import org.lazywizard.console.CommandStore.StoredCommand;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A command script compiled into a list of commands that are ready to run. Every command and alias in the script is
+ * looked up when it is compiled, so running a script skips all of the parsing that entering its contents by hand
+ * would need.
+ * <p>
+ * Scripts are plain text files with one or more commands per line (separated by the command separator). Empty lines
+ * and lines starting with # are ignored.
+ * <p>
+ * If the player has a script named "autoexec", it is run automatically every time a save is loaded.
+ *
+ * @since 3.0
+ */
+public final class CommandScript
+{
+    private static final int MAX_NESTING = 8;
+    private static final String AUTOEXEC = "autoexec";
+    // The game doesn't expose file modification times, so scripts are recompiled when their contents change instead
+    private static final Map<String, CommandScript> cache = new HashMap<>();
+    private static int nesting = 0;
+    private final String path, source, separator;
+    private final int generation;
+    private final boolean cheatsAllowed;
+    private final CompiledCommand[] commands;
+
+    private CommandScript(String path, String source, List<CompiledCommand> commands)
+    {
+        this.path = path;
+        this.source = source;
+        this.separator = Console.getSettings().getCommandSeparator();
+        this.generation = CommandStore.getGeneration();
+        this.cheatsAllowed = Console.getSettings().getCheatsAllowedForSave();
+        this.commands = commands.toArray(new CompiledCommand[commands.size()]);
+    }
+
+    /**
+     * Finds and compiles a script, reusing the previously compiled version if nothing has changed since.
+     *
+     * @param name       The name of the script. ".txt" is added if the name doesn't have an extension.
+     * @param playerOnly If {@code true}, only the player's own scripts in {@link CommonStrings#PATH_COMMON_SCRIPTS}
+     *                   are checked, not those bundled with mods.
+     *
+     * @return The compiled script, or {@code null} if no script with that name exists.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public static CommandScript load(String name, boolean playerOnly)
+    {
+        final String fileName = (name.indexOf('.') < 0 ? name + ".txt" : name);
+        if (fileName.contains(".."))
+        {
+            return null;
+        }
+
+        // The player's own scripts take priority over any bundled with mods
+        String path = CommonStrings.PATH_COMMON_SCRIPTS + fileName, source;
+        try
+        {
+            source = Global.getSettings().readTextFileFromCommon(path);
+        }
+        catch (IOException ex)
+        {
+            source = "";
+        }
+
+        if (source.isEmpty() && !playerOnly)
+        {
+            path = CommonStrings.PATH_SCRIPTS + fileName;
+            try
+            {
+                source = Global.getSettings().loadText(path);
+            }
+            catch (IOException | RuntimeException ex)
+            {
+                source = "";
+            }
+        }
+
+        if (source.isEmpty())
+        {
+            return null;
+        }
+
+        final CommandScript cached = cache.get(path);
+        if (cached != null && cached.isCurrent(source))
+        {
+            return cached;
+        }
+
+        final CommandScript script = compile(path, source);
+        cache.put(path, script);
+        return script;
+    }
+
+    // Anything a script was compiled against can change between runs
+    private boolean isCurrent(String currentSource)
+    {
+        return generation == CommandStore.getGeneration()
+                && cheatsAllowed == Console.getSettings().getCheatsAllowedForSave()
+                && separator.equals(Console.getSettings().getCommandSeparator())
+                && source.equals(currentSource);
+    }
+
+    private static CommandScript compile(String path, String source)
+    {
+        final String separator = Console.getSettings().getCommandSeparator();
+        final InputLexer lexer = new InputLexer(), aliasLexer = new InputLexer();
+        final List<CompiledCommand> compiled = new ArrayList<>();
+        for (String line : source.split("\n"))
+        {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#"))
+            {
+                continue;
+            }
+
+            lexer.lex(line, separator);
+            for (int i = 0; i < lexer.getNumCommands(); i++)
+            {
+                final String com = lexer.getCommand(i);
+                final AliasTemplate alias = CommandStore.retrieveAlias(com);
+                if (alias == null)
+                {
+                    compiled.add(new CompiledCommand(lexer.getInput(i), com, lexer.getArgs(i), lexer.getTokens(i),
+                            CommandStore.retrieveCommand(com), null));
+                    continue;
+                }
+
+                // Aliases are expanded now, so running the script never has to look at them again
+                final AliasTemplate.Expansion expansion = alias.expand(lexer.getArgs(i));
+                if (expansion == null)
+                {
+                    compiled.add(new CompiledCommand(lexer.getInput(i), com, lexer.getArgs(i), new String[0],
+                            null, alias.getError()));
+                    continue;
+                }
+
+                for (int j = 0; j < expansion.commands.length; j++)
+                {
+                    aliasLexer.lexArgs(expansion.commands[j], expansion.args[j]);
+                    compiled.add(new CompiledCommand(expansion.inputs[j], expansion.commands[j], expansion.args[j],
+                            aliasLexer.getTokens(0), CommandStore.retrieveCommand(expansion.commands[j]), null));
+                }
+            }
+        }
+
+        return new CommandScript(path, source, compiled);
+    }
+
+    // Called by ConsoleModPlugin; the script runs on the first campaign frame, once everything has been loaded
+    static void queueAutoexec()
+    {
+        // Only the player can set up an autoexec script, mods can't add one for them
+        if (load(AUTOEXEC, true) != null)
+        {
+            Global.getSector().addTransientScript(new AutoexecScript());
+        }
+    }
+
+    /**
+     * @return The path of the file this script was compiled from.
+     *
+     * @since 3.0
+     */
+    public String getPath()
+    {
+        return path;
+    }
+
+    /**
+     * Runs every command in this script, in order. Failed commands don't stop the script. All output is shown at once
+     * after the script has finished.
+     *
+     * @return {@link CommandResult#SUCCESS} if every command succeeded, {@link CommandResult#ERROR} otherwise.
+     *
+     * @since 3.0
+     */
+    public CommandResult run(CommandContext context)
+    {
+        // Scripts can run other scripts, including themselves
+        if (nesting >= MAX_NESTING)
+        {
+            Console.showMessage("Scripts can't be nested more than " + MAX_NESTING + " deep!", Level.ERROR);
+            return CommandResult.ERROR;
+        }
+
+        nesting++;
+        Console.beginBatch();
+        try
+        {
+            int numFailed = 0;
+            for (CompiledCommand command : commands)
+            {
+                final CommandResult result;
+                if (command.error != null)
+                {
+                    Console.showMessage(command.error, Level.ERROR);
+                    result = CommandResult.ERROR;
+                }
+                else
+                {
+                    result = Console.runCompiledCommand(command.input, command.command, command.args,
+                            command.tokens, command.stored, context);
+                }
+
+                if (result != CommandResult.SUCCESS)
+                {
+                    numFailed++;
+                }
+            }
+
+            Console.showMessage("Ran " + commands.length + " commands from " + path
+                    + (numFailed > 0 ? " (" + numFailed + " failed)." : "."));
+            return (numFailed > 0 ? CommandResult.ERROR : CommandResult.SUCCESS);
+        }
+        finally
+        {
+            Console.endBatch();
+            nesting--;
+        }
+    }
+
+    private static class AutoexecScript implements EveryFrameScript
+    {
+        private boolean isDone = false;
+
+        @Override
+        public boolean isDone()
+        {
+            return isDone;
+        }
+
+        @Override
+        public boolean runWhilePaused()
+        {
+            return true;
+        }
+
+        @Override
+        public void advance(float amount)
+        {
+            if (isDone)
+            {
+                return;
+            }
+
+            // Loaded again in case the script was edited while the save was loading
+            isDone = true;
+            final CommandScript script = load(AUTOEXEC, true);
+            if (script != null)
+            {
+                Console.showMessage("Running " + script.getPath() + "...", Level.DEBUG);
+                script.run(CommandContext.CAMPAIGN_MAP);
+            }
+        }
+    }
+
+    private static final class CompiledCommand
+    {
+        private final String input, command, args;
+        private final String[] tokens;
+        @Nullable private final StoredCommand stored;
+        @Nullable private final String error;
+
+        private CompiledCommand(String input, String command, String args, String[] tokens,
+                                @Nullable StoredCommand stored, @Nullable String error)
+        {
+            this.input = input;
+            this.command = command;
+            this.args = args;
+            this.tokens = tokens;
+            this.stored = stored;
+            this.error = error;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package org.lazywizard.console;
 
 import com.fs.starfarer.api.Global;
+import org.apache.log4j.Level;
 import org.apache.log4j.Logger;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -12,6 +14,7 @@ import org.lazywizard.lazylib.JSONUtils;
 import org.lazywizard.lazylib.JSONUtils.CommonDataJSONObject;
 
 import java.io.IOException;
+import java.lang.reflect.Constructor;
 import java.util.*;
 
 /**
@@ -24,10 +27,14 @@ import java.util.*;
 public class CommandStore
 {
     private static final Logger Log = Global.getLogger(CommandStore.class);
-    private static final Map<String, StoredCommand> storedCommands = new HashMap<>();
     private static final List<ListenerData> listeners = new ArrayList<>();
     private static final Map<String, String> aliases = new HashMap<>();
-    private static final Set<String> tags = new HashSet<>();
+    private static Map<String, AliasTemplate> compiledAliases = Collections.emptyMap();
+    private static volatile Registry registry = Registry.EMPTY;
+    private static volatile ListenerRoutes listenerRoutes = ListenerRoutes.EMPTY;
+    // Incremented whenever commands, aliases, settings or the loaded save change, so anything resolved against them
+    // (compiled scripts, remembered command output) knows to refresh
+    private static volatile int generation = 0;
     private static CommonDataJSONObject aliasData = null;
 
     /**
@@ -49,15 +56,27 @@ public class CommandStore
     }
 
     // Will only throw these exceptions if there is an error loading the CSV
+    // Command classes aren't loaded here, see StoredCommand.resolveClass()
     // TODO: Javadoc
-    @SuppressWarnings("unchecked")
     public static void reloadCommands() throws IOException, JSONException
     {
-        storedCommands.clear();
-        tags.clear();
+        final long startTime = System.nanoTime();
+        final ConsoleLoader.LoadErrors errors = new ConsoleLoader.LoadErrors();
+        final List<StoredCommand> loaded = parseCommands(errors);
+        errors.show();
+        setCommands(loaded);
+        Log.info("Registered " + loaded.size() + " commands in " + CommandUtils.format(
+                (System.nanoTime() - startTime) / 1_000_000f) + "ms; command classes will be loaded on first use"
+                + " (use ValidateCommands to load and check them all)");
+    }
+
+    // Only reads the CSV (no classes are loaded), so this is safe to call from a background thread
+    // Only reads the CSV, so this is safe to call from a background thread; rows that fail are added to errors
+    static List<StoredCommand> parseCommands(ConsoleLoader.LoadErrors errors) throws IOException, JSONException
+    {
+        final Map<String, StoredCommand> loaded = new HashMap<>();
         final JSONArray commandData = Global.getSettings().getMergedSpreadsheetDataForMod(
                 "command", CommonStrings.PATH_CSV, CommonStrings.MOD_ID);
-        final ClassLoader loader = Global.getSettings().getScriptClassLoader();
         for (int i = 0; i < commandData.length(); i++)
         {
             // Defined here so we can use them in the catch block
@@ -79,19 +98,16 @@ public class CommandStore
                 // Load these first so we can display them if there's an error
                 commandPath = row.getString("class");
                 commandSource = row.getString("fs_rowSource");
-
-                // Check if the class is valid
-                final Class commandClass = loader.loadClass(commandPath);
-                if (!BaseCommand.class.isAssignableFrom(commandClass))
+                if (commandPath.isEmpty())
                 {
-                    throw new ConsoleException(commandClass.getCanonicalName()
-                            + " does not extend " + BaseCommand.class.getCanonicalName());
+                    throw new ConsoleException("No class specified");
                 }
 
-                // Class is valid, start building command info
+                // Start building command info
                 final String commandSyntax = row.optString("syntax", "");
                 final String commandHelp = row.optString("help", "")
                         .replace("\\n", "\n"); // Newline support
+                final boolean commandStateless = row.optBoolean("stateless", false);
 
                 // Generate the tag list
                 final String[] rawTags = row.optString("tags", "").split(",");
@@ -105,38 +121,68 @@ public class CommandStore
                     }
 
                     commandTags.add(tag);
-
-                    // Add to global list of tags
-                    tags.add(tag);
                 }
 
                 // Built command info, register it in the master command list
-                storedCommands.put(commandName.toLowerCase(),
-                        new StoredCommand(commandName, commandClass,
-                                commandSyntax, commandHelp,
-                                commandTags, commandSource));
-                Log.debug("Loaded command " + commandName + " (class: "
-                        + commandClass.getCanonicalName() + ") from " + commandSource);
+                loaded.put(commandName.toLowerCase(),
+                        new StoredCommand(commandName, commandPath,
+                                commandSyntax, commandHelp, commandTags,
+                                StoredCommand.filterModPath(commandSource, errors), commandStateless));
+                Log.debug("Registered command " + commandName + " (class: "
+                        + commandPath + ") from " + commandSource);
             }
             catch (Exception ex)
             {
-                Console.showException("Failed to load command " + commandName
+                errors.add("Failed to load command " + commandName
                         + " (class: " + commandPath + ") from " + commandSource, ex);
             }
         }
 
-        Log.info("Loaded commands: " + CollectionUtils.implode(getLoadedCommands()));
+        return new ArrayList<>(loaded.values());
+    }
+
+    // Must be called from the main thread
+    static void setCommands(Collection<StoredCommand> commands)
+    {
+        // Swap in the new registry all at once so lookups never see a half-loaded command list
+        registry = new Registry(commands);
+        compileAliases();
+        rebuildListenerRoutes();
+        Log.info("Loaded commands: " + CollectionUtils.implode(registry.all.names));
     }
 
     // TODO: Javadoc
-    @SuppressWarnings("unchecked")
     public static void reloadAliases() throws IOException
+    {
+        CommonDataJSONObject data;
+        try
+        {
+            data = loadAliases();
+        }
+        catch (JSONException ex)
+        {
+            Console.showException("Failed to parse aliases", ex);
+            data = null;
+        }
+
+        setAliases(data);
+    }
+
+    // Only reads the aliases file, so this is safe to call from a background thread
+    static CommonDataJSONObject loadAliases() throws IOException, JSONException
+    {
+        return JSONUtils.loadCommonJSON("config/lw_console_aliases.json", "data/console/aliases.default");
+    }
+
+    // Must be called from the main thread
+    @SuppressWarnings("unchecked")
+    static void setAliases(@Nullable CommonDataJSONObject data)
     {
         // Populate alias mapping
         aliases.clear();
-        try
+        if (data != null)
         {
-            aliasData = JSONUtils.loadCommonJSON("config/lw_console_aliases.json", "data/console/aliases.default");
+            aliasData = data;
             for (Iterator iter = aliasData.keys(); iter.hasNext(); )
             {
                 final String alias = (String) iter.next();
@@ -147,22 +193,57 @@ public class CommandStore
                 }
             }
         }
-        catch (JSONException ex)
+
+        compileAliases();
+        Log.info("Loaded aliases: " + CollectionUtils.implode(getAliases().keySet()));
+    }
+
+    // Aliases can use other aliases, so they are always recompiled together
+    private static void compileAliases()
+    {
+        compiledAliases = AliasTemplate.compileAll(aliases, registry.all.commands.keySet());
+        for (AliasTemplate alias : compiledAliases.values())
         {
-            Console.showException("Failed to parse aliases", ex);
+            if (alias.getError() != null)
+            {
+                Console.showMessage(alias.getError(), Level.WARN);
+            }
         }
 
-        Log.info("Loaded aliases: " + CollectionUtils.implode(getAliases().keySet()));
+        incrementGeneration();
+    }
+
+    // Commands and aliases are always changed together with compileAliases(), so that's where this is incremented
+    // for them; ConsoleSettings and ConsoleModPlugin call it directly
+    static void incrementGeneration()
+    {
+        generation++;
+    }
+
+    static int getGeneration()
+    {
+        return generation;
     }
 
     // TODO: Javadoc
-    @SuppressWarnings("unchecked")
     public static void reloadListeners() throws IOException, JSONException
+    {
+        setListeners(loadListenerData());
+    }
+
+    // Only reads the CSV, so this is safe to call from a background thread
+    static JSONArray loadListenerData() throws IOException, JSONException
+    {
+        return Global.getSettings().getMergedSpreadsheetDataForMod(
+                "listenerId", CommonStrings.PATH_LISTENER_CSV, CommonStrings.MOD_ID);
+    }
+
+    // Loads and instantiates listener classes, so this must be called from the main thread
+    @SuppressWarnings("unchecked")
+    static void setListeners(JSONArray listenerData)
     {
         // Populate listeners
         listeners.clear();
-        final JSONArray listenerData = Global.getSettings().getMergedSpreadsheetDataForMod(
-                "listenerId", CommonStrings.PATH_LISTENER_CSV, CommonStrings.MOD_ID);
         final ClassLoader loader = Global.getSettings().getScriptClassLoader();
         for (int i = 0; i < listenerData.length(); i++)
         {
@@ -171,6 +252,7 @@ public class CommandStore
             String listenerPath = null;
             String listenerSource = null;
             int listenerPriority;
+            Set<String> listenerInterests;
 
             try
             {
@@ -187,6 +269,7 @@ public class CommandStore
                 listenerPath = row.getString("listenerClass");
                 listenerPriority = row.optInt("priority", 0);
                 listenerSource = row.getString("fs_rowSource");
+                listenerInterests = parseInterests(row.optString("commands", ""));
 
                 // Check if the class is valid
                 final Class listenerClass = loader.loadClass(listenerPath);
@@ -197,7 +280,8 @@ public class CommandStore
                 }
 
                 // Register listener
-                listeners.add(new ListenerData((CommandListener) listenerClass.newInstance(), listenerPriority));
+                listeners.add(new ListenerData(listenerId, (CommandListener) listenerClass.newInstance(),
+                        listenerPriority, listenerInterests));
                 Log.debug("Loaded listener " + listenerId + " (class: "
                         + listenerClass.getCanonicalName() + ") from " + listenerSource);
             }
@@ -209,42 +293,108 @@ public class CommandStore
         }
 
         Collections.sort(listeners);
+        rebuildListenerRoutes();
         Log.info("Loaded listeners: " + CollectionUtils.implode(getListeners()));
     }
 
-    private static Map<String, StoredCommand> getStoredCommands()
+    // Returns null if the listener wants to hear about every command
+    @Nullable
+    private static Set<String> parseInterests(String rawInterests)
     {
-        if (Console.getSettings().getCheatsAllowedForSave()) return storedCommands;
+        final Set<String> interests = new HashSet<>();
+        for (String interest : rawInterests.split(","))
+        {
+            interest = interest.toLowerCase().trim();
+            if (!interest.isEmpty())
+            {
+                interests.add(interest);
+            }
+        }
 
-        final Map<String, StoredCommand> commands = new HashMap<>();
-        for (Map.Entry<String, StoredCommand> entry : storedCommands.entrySet())
+        return (interests.isEmpty() ? null : interests);
+    }
+
+    // Works out which listeners need to be notified for each command, so running a command only has to do a lookup
+    // Must be called whenever either the commands or the listeners change
+    private static void rebuildListenerRoutes()
+    {
+        final Registry.View view = registry.all;
+        final List<CommandListener> global = new ArrayList<>();
+        for (ListenerData data : listeners)
         {
-            if (entry.getValue().getTags().contains(CommonStrings.CHEAT_TAG)) continue;
-            commands.put(entry.getKey(), entry.getValue());
+            if (data.interests == null)
+            {
+                global.add(data.listener);
+                continue;
+            }
+
+            for (String interest : data.interests)
+            {
+                if (!view.commands.containsKey(interest) && !view.commandsByTag.containsKey(interest))
+                {
+                    Log.warn("Listener " + data.id + " is registered for unknown command or tag \"" + interest + "\"");
+                }
+            }
         }
 
-        return commands;
+        // Only commands with a listener that specifically asked for them get their own route
+        final Map<String, CommandListener[]> routes = new HashMap<>();
+        for (Map.Entry<String, StoredCommand> entry : view.commands.entrySet())
+        {
+            final StoredCommand command = entry.getValue();
+            boolean hasRoute = false;
+            for (ListenerData data : listeners)
+            {
+                if (data.isInterestedIn(entry.getKey(), command.tags))
+                {
+                    hasRoute = true;
+                    break;
+                }
+            }
+
+            if (!hasRoute)
+            {
+                continue;
+            }
+
+            // Listeners are already sorted by priority, so routes will be too
+            final List<CommandListener> route = new ArrayList<>();
+            for (ListenerData data : listeners)
+            {
+                if (data.interests == null || data.isInterestedIn(entry.getKey(), command.tags))
+                {
+                    route.add(data.listener);
+                }
+            }
+
+            routes.put(entry.getKey(), route.toArray(new CommandListener[route.size()]));
+        }
+
+        listenerRoutes = new ListenerRoutes(routes, global.toArray(new CommandListener[global.size()]));
+    }
+
+    // Cheat commands are filtered out of the registry if they were disabled for this save
+    // Mods may use the API before the console has been opened, so finish loading first if it's still in progress
+    private static Registry.View getView()
+    {
+        ConsoleLoader.ensureLoaded();
+        final Registry current = registry;
+        return (Console.getSettings().getCheatsAllowedForSave() ? current.all : current.noCheats);
     }
 
     /**
      * Returns all commands currently loaded by the mod.
      *
-     * @return A {@link List} containing the names of all loaded commands.
+     * @return An unmodifiable {@link List} containing the names of all loaded commands, sorted alphabetically.
      *
      * @since 2.0
      */
     public static List<String> getLoadedCommands()
     {
-        final List<String> commands = new ArrayList<>(storedCommands.size());
-        for (StoredCommand tmp : getStoredCommands().values())
-        {
-            commands.add(tmp.getName());
-        }
-
-        return commands;
+        return getView().names;
     }
 
-    private static boolean isApplicable(StoredCommand command, CommandContext context)
+    static boolean isApplicable(StoredCommand command, CommandContext context)
     {
         final List<String> tags = command.tags;
 
@@ -275,23 +425,43 @@ public class CommandStore
      * <p>
      * Commands with the tag "console" are assumed to be system-level, and will run anywhere.
      *
-     * @return A {@link List} containing the names of all loaded commands
-     *         that are applicable to the given context.
+     * @return An unmodifiable {@link List} containing the names of all loaded commands that are applicable to the
+     *         given context, sorted alphabetically.
      *
      * @since 3.0
      */
     public static List<String> getApplicableCommands(CommandContext context)
     {
-        final List<String> commands = new ArrayList<>();
-        for (StoredCommand command : getStoredCommands().values())
-        {
-            if (isApplicable(command, context))
-            {
-                commands.add(command.getName());
-            }
-        }
+        return getView().applicable.get(context);
+    }
 
-        return commands;
+    // Used by the overlay's tab completion
+    static CommandTrie getCompletions(CommandContext context)
+    {
+        return getView().completions.get(context);
+    }
+
+    // Used by the overlay's tab completion once arguments have been entered
+    static ArgumentCompletion getArgumentCompletion(String command)
+    {
+        final StoredCommand stored = getView().commands.get(command.toLowerCase());
+        return (stored == null ? ArgumentCompletion.NONE : stored.getArgumentCompletion());
+    }
+
+    /**
+     * Searches the name, tags, syntax and help text of every loaded command. Words in the query also match any word
+     * they're the start of, so "fac" finds commands mentioning "faction" or "facilities".
+     *
+     * @param query The words to search for. A command must contain all of them to match.
+     *
+     * @return The names of all matching commands, the most relevant first. Relevance is based on how often the
+     *         query's words appear in a command, with its name and tags counting more than its help text.
+     *
+     * @since 3.0
+     */
+    public static List<String> searchCommands(String query)
+    {
+        return getView().searchIndex.search(query);
     }
 
     /**
@@ -304,6 +474,7 @@ public class CommandStore
      */
     public static Map<String, String> getAliases()
     {
+        ConsoleLoader.ensureLoaded();
         return new HashMap<>(aliases);
     }
 
@@ -320,6 +491,7 @@ public class CommandStore
      */
     public static void registerAlias(String alias, String command) throws IOException, JSONException
     {
+        ConsoleLoader.finishLoading();
         alias = alias.toLowerCase();
         if (command == null)
         {
@@ -334,30 +506,32 @@ public class CommandStore
         }
         else
         {
-            command = command.replaceAll(Console.getSettings().getCommandSeparator(), ";");
+            command = command.replace(Console.getSettings().getCommandSeparator(), ";");
             aliasData.put(alias, command);
             aliasData.save();
             aliases.put(alias, command);
         }
+
+        compileAliases();
+    }
+
+    @Nullable
+    static AliasTemplate retrieveAlias(String alias)
+    {
+        return compiledAliases.get(alias);
     }
 
     /**
      * Returns all command tags that the mod is currently aware of.
      *
-     * @return A {@link List} containing all tags used by the currently loaded
-     *         commands.
+     * @return An unmodifiable {@link List} containing all tags used by the currently loaded
+     *         commands, sorted alphabetically.
      *
      * @since 2.0
      */
     public static List<String> getKnownTags()
     {
-        final List<String> allowedTags = new ArrayList<>(tags);
-        if (!Console.getSettings().getCheatsAllowedForSave())
-        {
-            tags.remove(CommonStrings.CHEAT_TAG);
-        }
-
-        return allowedTags;
+        return getView().tags;
     }
 
     /**
@@ -365,25 +539,15 @@ public class CommandStore
      *
      * @param tag The tag to search for.
      *
-     * @return A {@link List} containing the names of all loaded commands that
-     *         use the tag {@code tag}.
+     * @return An unmodifiable {@link List} containing the names of all loaded commands that
+     *         use the tag {@code tag}, sorted alphabetically.
      *
      * @since 2.0
      */
     public static List<String> getCommandsWithTag(String tag)
     {
-        tag = tag.toLowerCase();
-
-        final List<String> commands = new ArrayList<>();
-        for (StoredCommand tmp : getStoredCommands().values())
-        {
-            if (tmp.getTags().contains(tag))
-            {
-                commands.add(tmp.getName());
-            }
-        }
-
-        return commands;
+        final List<String> commands = getView().commandsByTag.get(tag.toLowerCase());
+        return (commands == null ? Collections.<String>emptyList() : commands);
     }
 
     /**
@@ -395,6 +559,7 @@ public class CommandStore
      */
     public static List<CommandListener> getListeners()
     {
+        ConsoleLoader.ensureLoaded();
         final List<CommandListener> commandListeners = new ArrayList<>(listeners.size());
         for (ListenerData tmp : listeners)
         {
@@ -404,6 +569,33 @@ public class CommandStore
         return commandListeners;
     }
 
+    /**
+     * Returns the {@link CommandListener}s that should be notified when a command is run, in priority order.
+     *
+     * @param command The command being run, in lowercase.
+     *
+     * @return The listeners interested in {@code command}. Must not be modified.
+     */
+    static CommandListener[] getListenersFor(String command)
+    {
+        final ListenerRoutes routes = listenerRoutes;
+        final CommandListener[] route = routes.byCommand.get(command);
+        return (route == null ? routes.global : route);
+    }
+
+    /**
+     * Returns every loaded command, including cheats even if they are disabled for this save.
+     *
+     * @return An unmodifiable {@link Collection} containing the {@link StoredCommand} of every loaded command.
+     *
+     * @since 3.0
+     */
+    public static Collection<StoredCommand> getAllStoredCommands()
+    {
+        ConsoleLoader.ensureLoaded();
+        return Collections.unmodifiableCollection(registry.all.commands.values());
+    }
+
     /**
      * Retrieves the internal data for a specific command.
      *
@@ -417,14 +609,7 @@ public class CommandStore
      */
     public static StoredCommand retrieveCommand(String command)
     {
-        command = command.toLowerCase();
-
-        if (getStoredCommands().containsKey(command))
-        {
-            return getStoredCommands().get(command);
-        }
-
-        return null;
+        return getView().commands.get(command.toLowerCase());
     }
 
     /**
@@ -434,12 +619,20 @@ public class CommandStore
      */
     public static final class StoredCommand
     {
-        private final Class<? extends BaseCommand> commandClass;
-        private final String name, syntax, help, source;
+        private final String name, className, syntax, help, source;
         private final List<String> tags;
+        private final boolean stateless;
+        // Loaded on first use, so commands that are never run never have their classes (or dependencies) loaded
+        private Class<? extends BaseCommand> commandClass = null;
+        private long loadTime = 0L;
+        // Resolved on first use so running a command doesn't go through Class.newInstance() every time
+        private Constructor<? extends BaseCommand> constructor = null;
+        private BaseCommand instance = null;
+        // Parsed from the syntax the first time one of this command's arguments is tab-completed
+        private ArgumentCompletion argumentCompletion = null;
 
         // TODO: This can be done through the API now
-        private static String filterModPath(String fullPath)
+        private static String filterModPath(String fullPath, ConsoleLoader.LoadErrors errors)
         {
             try
             {
@@ -450,33 +643,199 @@ public class CommandStore
             }
             catch (Exception ex)
             {
-                Console.showException("Failed to reduce modpath '" + fullPath + "'", ex);
+                errors.add("Failed to reduce modpath '" + fullPath + "'", ex);
                 return fullPath;
             }
         }
 
-        private StoredCommand(String commandName, Class<? extends BaseCommand> commandClass,
-                              String syntax, String help, List<String> tags, String source)
+        StoredCommand(String commandName, String className,
+                              String syntax, String help, List<String> tags, String source, boolean stateless)
         {
             this.name = commandName;
-            this.commandClass = commandClass;
+            this.className = className;
             this.syntax = (syntax == null ? "" : syntax);
             this.help = (help == null ? "" : help);
-            this.tags = tags;
-            this.source = filterModPath(source);
+            this.tags = Collections.unmodifiableList(tags);
+            this.source = source;
+            this.stateless = stateless;
+        }
+
+        ArgumentCompletion getArgumentCompletion()
+        {
+            if (argumentCompletion == null)
+            {
+                argumentCompletion = ArgumentCompletion.parse(syntax);
+            }
+
+            return argumentCompletion;
+        }
+
+        // Loads and checks this command's class, if that hasn't been done already
+        @SuppressWarnings("unchecked")
+        Class<? extends BaseCommand> resolveClass() throws ConsoleException
+        {
+            if (commandClass != null)
+            {
+                return commandClass;
+            }
+
+            final long startTime = System.nanoTime();
+            try
+            {
+                final Class<?> tmp = Global.getSettings().getScriptClassLoader().loadClass(className);
+                if (!BaseCommand.class.isAssignableFrom(tmp))
+                {
+                    throw new ConsoleException(tmp.getCanonicalName()
+                            + " does not extend " + BaseCommand.class.getCanonicalName());
+                }
+
+                commandClass = (Class<? extends BaseCommand>) tmp;
+                Log.debug("Loaded class for command " + name + " (class: " + className + ") in "
+                        + CommandUtils.format((System.nanoTime() - startTime) / 1_000_000f) + "ms");
+                return commandClass;
+            }
+            catch (ClassNotFoundException | LinkageError ex)
+            {
+                throw new ConsoleException("Failed to load class " + className + " for command "
+                        + name + " from " + source, ex);
+            }
+            finally
+            {
+                loadTime += System.nanoTime() - startTime;
+            }
+        }
+
+        /**
+         * Loads and checks this command's class, catching everything that
+         * would otherwise only be found the first time this command is run.
+         *
+         * @return {@code null} if this command can be run, otherwise the
+         *         reason it can't.
+         *
+         * @since 3.0
+         */
+        @Nullable
+        public Exception validate()
+        {
+            if (constructor != null)
+            {
+                return null;
+            }
+
+            try
+            {
+                constructor = resolveClass().getConstructor();
+                return null;
+            }
+            catch (ConsoleException ex)
+            {
+                return ex;
+            }
+            catch (NoSuchMethodException ex)
+            {
+                return new ConsoleException(className + " does not have a public no-argument constructor", ex);
+            }
         }
 
         /**
-         * Returns the class object for this command's implementation.
+         * Returns how long has been spent loading this command's class.
+         *
+         * @return Time spent loading this command's class so far this
+         *         session, in nanoseconds. Zero if it hasn't been loaded yet.
+         *
+         * @since 3.0
+         */
+        public long getLoadTime()
+        {
+            return loadTime;
+        }
+
+        // Stateless commands are instantiated once and reused, everything else gets a fresh instance per execution
+        BaseCommand getCommandInstance() throws ReflectiveOperationException, ConsoleException
+        {
+            if (instance != null)
+            {
+                return instance;
+            }
+
+            if (constructor == null)
+            {
+                constructor = resolveClass().getConstructor();
+            }
+
+            // Incremental commands store their progress in the instance, so they can't be shared
+            final BaseCommand command = constructor.newInstance();
+            if (stateless && !(command instanceof IncrementalCommand))
+            {
+                instance = command;
+            }
+
+            return command;
+        }
+
+        /**
+         * Returns the class object for this command's implementation. Command
+         * classes are only loaded the first time they are needed, so calling
+         * this may load the class.
          *
          * @return The {@link Class} of the {@link BaseCommand} implementation
          *         that will be instantiated when this command is run.
          *
+         * @throws RuntimeException If the class couldn't be loaded. Use
+         *                          {@link #tryGetCommandClass()} to get
+         *                          {@code null} instead.
          * @since 2.0
          */
         public Class<? extends BaseCommand> getCommandClass()
         {
-            return commandClass;
+            try
+            {
+                return resolveClass();
+            }
+            catch (ConsoleException ex)
+            {
+                throw new RuntimeException(ex.getMessage(), ex);
+            }
+        }
+
+        /**
+         * Returns the class object for this command's implementation, loading
+         * it if this command hasn't been used yet. Unlike
+         * {@link #getCommandClass()}, a command whose class can't be loaded
+         * is logged rather than thrown.
+         *
+         * @return The {@link Class} of the {@link BaseCommand} implementation
+         *         that will be instantiated when this command is run, or
+         *         {@code null} if the class couldn't be loaded.
+         *
+         * @since 3.0
+         */
+        @Nullable
+        public Class<? extends BaseCommand> tryGetCommandClass()
+        {
+            try
+            {
+                return resolveClass();
+            }
+            catch (ConsoleException ex)
+            {
+                Log.error(ex.getMessage(), ex);
+                return null;
+            }
+        }
+
+        /**
+         * Returns the fully qualified name of this command's implementation,
+         * without loading the class.
+         *
+         * @return The class name of this command, taken from the 'class'
+         *         column of the CSV.
+         *
+         * @since 3.0
+         */
+        public String getClassName()
+        {
+            return className;
         }
 
         /**
@@ -529,7 +888,20 @@ public class CommandStore
          */
         public List<String> getTags()
         {
-            return Collections.unmodifiableList(tags);
+            return tags;
+        }
+
+        /**
+         * Returns whether this command is stateless, meaning a single instance can be reused for every execution
+         * instead of creating a new one each time the command is run.
+         *
+         * @return The value of the 'stateless' column of the CSV, or {@code false} if it was left empty.
+         *
+         * @since 3.0
+         */
+        public boolean isStateless()
+        {
+            return stateless;
         }
 
         /**
@@ -549,15 +921,164 @@ public class CommandStore
         }
     }
 
+    // Immutable snapshot of all loaded commands, rebuilt by reloadCommands()
+    // Everything is precomputed so lookups (including every tab press in the overlay) never need to allocate
+    static final class Registry
+    {
+        static final Registry EMPTY = new Registry(Collections.<StoredCommand>emptyList());
+        final View all, noCheats;
+
+        Registry(Collection<StoredCommand> commands)
+        {
+            final List<StoredCommand> noCheatCommands = new ArrayList<>(commands.size());
+            for (StoredCommand command : commands)
+            {
+                if (!command.tags.contains(CommonStrings.CHEAT_TAG))
+                {
+                    noCheatCommands.add(command);
+                }
+            }
+
+            all = new View(commands);
+            noCheats = (noCheatCommands.size() == commands.size() ? all : new View(noCheatCommands));
+        }
+
+        static final class View
+        {
+            final Map<String, StoredCommand> commands;
+            final List<String> names, tags;
+            final Map<String, List<String>> commandsByTag;
+            final Map<CommandContext, List<String>> applicable;
+            final Map<CommandContext, CommandTrie> completions;
+            final CommandIndex searchIndex;
+
+            private View(Collection<StoredCommand> stored)
+            {
+                final Map<String, StoredCommand> commands = new HashMap<>(stored.size() * 2);
+                final List<String> names = new ArrayList<>(stored.size());
+                final Map<String, List<String>> commandsByTag = new HashMap<>();
+                final Map<CommandContext, List<String>> applicable = new EnumMap<>(CommandContext.class);
+                for (CommandContext context : CommandContext.values())
+                {
+                    applicable.put(context, new ArrayList<String>());
+                }
+
+                for (StoredCommand command : stored)
+                {
+                    final String name = command.getName();
+                    commands.put(name.toLowerCase(), command);
+                    names.add(name);
+
+                    for (String tag : command.tags)
+                    {
+                        List<String> withTag = commandsByTag.get(tag);
+                        if (withTag == null)
+                        {
+                            withTag = new ArrayList<>();
+                            commandsByTag.put(tag, withTag);
+                        }
+
+                        withTag.add(name);
+                    }
+
+                    for (Map.Entry<CommandContext, List<String>> entry : applicable.entrySet())
+                    {
+                        if (isApplicable(command, entry.getKey()))
+                        {
+                            entry.getValue().add(name);
+                        }
+                    }
+                }
+
+                final List<String> tags = new ArrayList<>(commandsByTag.keySet());
+                for (Map.Entry<String, List<String>> entry : commandsByTag.entrySet())
+                {
+                    entry.setValue(sorted(entry.getValue()));
+                }
+                for (Map.Entry<CommandContext, List<String>> entry : applicable.entrySet())
+                {
+                    entry.setValue(sorted(entry.getValue()));
+                }
+
+                // Most contexts end up with the same commands, so they can share a trie
+                final Map<CommandContext, CommandTrie> completions = new EnumMap<>(CommandContext.class);
+                final Map<List<String>, CommandTrie> tries = new HashMap<>();
+                for (Map.Entry<CommandContext, List<String>> entry : applicable.entrySet())
+                {
+                    CommandTrie trie = tries.get(entry.getValue());
+                    if (trie == null)
+                    {
+                        trie = new CommandTrie(entry.getValue());
+                        tries.put(entry.getValue(), trie);
+                    }
+
+                    completions.put(entry.getKey(), trie);
+                }
+
+                this.commands = Collections.unmodifiableMap(commands);
+                this.names = sorted(names);
+                this.tags = sorted(tags);
+                this.commandsByTag = commandsByTag;
+                this.applicable = applicable;
+                this.completions = completions;
+
+                final List<StoredCommand> byName = new ArrayList<>(stored);
+                Collections.sort(byName, new Comparator<StoredCommand>()
+                {
+                    @Override
+                    public int compare(StoredCommand o1, StoredCommand o2)
+                    {
+                        return String.CASE_INSENSITIVE_ORDER.compare(o1.getName(), o2.getName());
+                    }
+                });
+                searchIndex = new CommandIndex(byName);
+            }
+
+            private static List<String> sorted(List<String> list)
+            {
+                Collections.sort(list, String.CASE_INSENSITIVE_ORDER);
+                return Collections.unmodifiableList(list);
+            }
+        }
+    }
+
     private static class ListenerData implements Comparable<ListenerData>
     {
+        private final String id;
         private final CommandListener listener;
         private final int priority;
+        @Nullable private final Set<String> interests;
 
-        private ListenerData(CommandListener listener, int priority)
+        private ListenerData(String id, CommandListener listener, int priority, @Nullable Set<String> interests)
         {
+            this.id = id;
             this.listener = listener;
             this.priority = priority;
+            this.interests = interests;
+        }
+
+        // Listeners without any declared interests are handled separately, as they listen to everything
+        private boolean isInterestedIn(String command, List<String> tags)
+        {
+            if (interests == null)
+            {
+                return false;
+            }
+
+            if (interests.contains(command))
+            {
+                return true;
+            }
+
+            for (String tag : tags)
+            {
+                if (interests.contains(tag))
+                {
+                    return true;
+                }
+            }
+
+            return false;
         }
 
         @Override
@@ -569,6 +1090,21 @@ public class CommandStore
 
     }
 
+    // The listeners to notify for each command, precomputed whenever commands or listeners are reloaded
+    private static final class ListenerRoutes
+    {
+        private static final ListenerRoutes EMPTY = new ListenerRoutes(
+                Collections.<String, CommandListener[]>emptyMap(), new CommandListener[0]);
+        private final Map<String, CommandListener[]> byCommand;
+        private final CommandListener[] global;
+
+        private ListenerRoutes(Map<String, CommandListener[]> byCommand, CommandListener[] global)
+        {
+            this.byCommand = byCommand;
+            this.global = global;
+        }
+    }
+
     private CommandStore()
     {
     }
@@ -0,0 +1,568 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A command's argument grammar, declared once and compiled into a reusable matcher. Replaces splitting the arguments
+ * by hand and checking each one with {@link CommandUtils#isInteger(String)} and friends before parsing it again.
+ * <p>
+ * A grammar is made of one or more forms, tried in the order given. Each form is a space-separated list of elements:
+ * <ul>
+ * <li>{@code <name>} - a required word.</li>
+ * <li>{@code <name:type>} - a required word of the given type: {@code int}, {@code long}, {@code float} or
+ * {@code double}.</li>
+ * <li>{@code [name]}, {@code [name:type]} or {@code [name:type=default]} - an optional word. It's skipped if the next
+ * word is missing or isn't of the right type, in which case the default (if any) is used instead.</li>
+ * <li>{@code <name...>} - everything left in the input, spaces included. Must be the last element.</li>
+ * <li>{@code keyword} - a word that must be entered exactly (ignoring case).</li>
+ * </ul>
+ * For example, a command taking an id and an optional amount in either order would use:
+ * <pre>
+ * private static final CommandSyntax SYNTAX = CommandSyntax.compile("&lt;id&gt; [amount:int=1]",
+ *         "&lt;amount:int&gt; &lt;id&gt;");
+ * ...
+ * final CommandSyntax.Arguments parsed = SYNTAX.parse(args);
+ * if (parsed == null) return CommandResult.BAD_SYNTAX;
+ * final int amount = parsed.getInt("amount");
+ * </pre>
+ * The input is split into words once per {@link #parse(String)}, however many forms are tried. Numbers are checked
+ * without throwing (and catching) {@link NumberFormatException}s.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class CommandSyntax
+{
+    private final Form[] forms;
+
+    private CommandSyntax(Form[] forms)
+    {
+        this.forms = forms;
+    }
+
+    /**
+     * Compiles a grammar.
+     *
+     * @param forms The forms the arguments can take, in the order they should be tried.
+     *
+     * @return The compiled grammar. Instances are immutable, so they can be stored in a static field and shared.
+     *
+     * @throws IllegalArgumentException if a form is malformed.
+     * @since 3.0
+     */
+    public static CommandSyntax compile(String... forms)
+    {
+        final Form[] compiled = new Form[forms.length];
+        for (int i = 0; i < forms.length; i++)
+        {
+            compiled[i] = new Form(i, forms[i]);
+        }
+
+        return new CommandSyntax(compiled);
+    }
+
+    /**
+     * Matches arguments against each form in turn.
+     *
+     * @param args The arguments passed into a command.
+     *
+     * @return The values of the first matching form, or {@code null} if no form matched. Commands should usually
+     *         return {@link BaseCommand.CommandResult#BAD_SYNTAX} in that case.
+     *
+     * @since 3.0
+     */
+    @Nullable
+    public Arguments parse(String args)
+    {
+        final Words words = new Words(args);
+        for (Form form : forms)
+        {
+            final Arguments parsed = form.match(args, words);
+            if (parsed != null)
+            {
+                return parsed;
+            }
+        }
+
+        return null;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Exception-free number checks">
+
+    /**
+     * Checks whether {@link Long#parseLong(String)} would accept a {@link String} and return a value between
+     * {@code min} and {@code max}, without throwing anything. Follows the same rules: an optional sign, then one or
+     * more digits.
+     */
+    static boolean isIntegral(String str, long min, long max)
+    {
+        final int length = str.length();
+        if (length == 0)
+        {
+            return false;
+        }
+
+        int i = 0;
+        final char first = str.charAt(0);
+        final boolean isNegative = (first == '-');
+        if (isNegative || first == '+')
+        {
+            if (length == 1)
+            {
+                return false;
+            }
+
+            i++;
+        }
+
+        // Accumulated negatively, as the most negative value has no positive counterpart
+        final long limit = (isNegative ? min : -max), beforeLast = limit / 10;
+        long result = 0;
+        for (; i < length; i++)
+        {
+            final int digit = Character.digit(str.charAt(i), 10);
+            if (digit < 0 || result < beforeLast)
+            {
+                return false;
+            }
+
+            result *= 10;
+            if (result < limit + digit)
+            {
+                return false;
+            }
+
+            result -= digit;
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks whether {@link Double#parseDouble(String)} (and {@link Float#parseFloat(String)}) would accept a
+     * {@link String}, without throwing anything. Follows the same rules: surrounding whitespace, a sign, NaN,
+     * Infinity, exponents and a trailing type suffix are all allowed.
+     */
+    static boolean isDecimal(String str)
+    {
+        final String trimmed = str.trim();
+        final int length = trimmed.length();
+        int i = 0;
+        if (length > 0 && (trimmed.charAt(0) == '+' || trimmed.charAt(0) == '-'))
+        {
+            i++;
+        }
+
+        if (trimmed.startsWith("NaN", i))
+        {
+            return i + 3 == length;
+        }
+
+        if (trimmed.startsWith("Infinity", i))
+        {
+            return i + 8 == length;
+        }
+
+        // Hexadecimal floating point is rare enough to not be worth duplicating
+        if (trimmed.startsWith("0x", i) || trimmed.startsWith("0X", i))
+        {
+            try
+            {
+                Double.parseDouble(trimmed);
+                return true;
+            }
+            catch (NumberFormatException ex)
+            {
+                return false;
+            }
+        }
+
+        int digits = 0;
+        while (i < length && isDigit(trimmed.charAt(i)))
+        {
+            i++;
+            digits++;
+        }
+
+        if (i < length && trimmed.charAt(i) == '.')
+        {
+            i++;
+            while (i < length && isDigit(trimmed.charAt(i)))
+            {
+                i++;
+                digits++;
+            }
+        }
+
+        if (digits == 0)
+        {
+            return false;
+        }
+
+        if (i < length && (trimmed.charAt(i) == 'e' || trimmed.charAt(i) == 'E'))
+        {
+            i++;
+            if (i < length && (trimmed.charAt(i) == '+' || trimmed.charAt(i) == '-'))
+            {
+                i++;
+            }
+
+            int exponentDigits = 0;
+            while (i < length && isDigit(trimmed.charAt(i)))
+            {
+                i++;
+                exponentDigits++;
+            }
+
+            if (exponentDigits == 0)
+            {
+                return false;
+            }
+        }
+
+        if (i < length && "fFdD".indexOf(trimmed.charAt(i)) >= 0)
+        {
+            i++;
+        }
+
+        return i == length;
+    }
+
+    // Unlike integers, decimals only accept ASCII digits
+    private static boolean isDigit(char ch)
+    {
+        return ch >= '0' && ch <= '9';
+    }
+    //</editor-fold>
+
+    private enum Type
+    {
+        WORD, INT, LONG, FLOAT, DOUBLE;
+
+        private boolean accepts(String word)
+        {
+            switch (this)
+            {
+                case INT:
+                    return isIntegral(word, Integer.MIN_VALUE, Integer.MAX_VALUE);
+                case LONG:
+                    return isIntegral(word, Long.MIN_VALUE, Long.MAX_VALUE);
+                case FLOAT:
+                case DOUBLE:
+                    return isDecimal(word);
+                default:
+                    return true;
+            }
+        }
+
+        // Only called once accepts() has returned true, so this never throws
+        private Object convert(String word)
+        {
+            switch (this)
+            {
+                case INT:
+                    return Integer.parseInt(word);
+                case LONG:
+                    return Long.parseLong(word);
+                case FLOAT:
+                    return Float.parseFloat(word);
+                case DOUBLE:
+                    return Double.parseDouble(word);
+                default:
+                    return word;
+            }
+        }
+    }
+
+    // The input split on whitespace, shared by every form
+    private static final class Words
+    {
+        private final List<String> words = new ArrayList<>();
+        private final List<Integer> starts = new ArrayList<>();
+
+        private Words(String input)
+        {
+            final int length = input.length();
+            int i = 0;
+            while (i < length)
+            {
+                while (i < length && Character.isWhitespace(input.charAt(i))) i++;
+                if (i == length)
+                {
+                    break;
+                }
+
+                final int start = i;
+                while (i < length && !Character.isWhitespace(input.charAt(i))) i++;
+                words.add(input.substring(start, i));
+                starts.add(start);
+            }
+        }
+    }
+
+    private static final class Element
+    {
+        private final String name; // The keyword itself for keywords
+        private final Type type;
+        private final boolean isKeyword, isOptional, isRest;
+        @Nullable private final Object defaultValue;
+
+        private Element(String name, Type type, boolean isKeyword, boolean isOptional, boolean isRest,
+                        @Nullable Object defaultValue)
+        {
+            this.name = name;
+            this.type = type;
+            this.isKeyword = isKeyword;
+            this.isOptional = isOptional;
+            this.isRest = isRest;
+            this.defaultValue = defaultValue;
+        }
+
+        private static Element parse(String element, String form)
+        {
+            final char first = element.charAt(0);
+            if (first != '<' && first != '[')
+            {
+                return new Element(element, Type.WORD, true, false, false, null);
+            }
+
+            final boolean isOptional = (first == '[');
+            if (element.charAt(element.length() - 1) != (isOptional ? ']' : '>'))
+            {
+                throw new IllegalArgumentException("Unclosed element '" + element + "' in syntax '" + form + "'");
+            }
+
+            String body = element.substring(1, element.length() - 1), defaultText = null;
+            final int equals = body.indexOf('=');
+            if (equals >= 0)
+            {
+                defaultText = body.substring(equals + 1);
+                body = body.substring(0, equals);
+            }
+
+            final boolean isRest = body.endsWith("...");
+            if (isRest)
+            {
+                body = body.substring(0, body.length() - 3);
+            }
+
+            Type type = Type.WORD;
+            final int colon = body.indexOf(':');
+            if (colon >= 0)
+            {
+                try
+                {
+                    type = Type.valueOf(body.substring(colon + 1).toUpperCase(Locale.ROOT));
+                }
+                catch (IllegalArgumentException ex)
+                {
+                    throw new IllegalArgumentException("Unknown type in '" + element + "' in syntax '" + form + "'");
+                }
+
+                body = body.substring(0, colon);
+            }
+
+            Object defaultValue = null;
+            if (defaultText != null)
+            {
+                if (!isOptional || !type.accepts(defaultText))
+                {
+                    throw new IllegalArgumentException("Invalid default in '" + element + "' in syntax '"
+                            + form + "'");
+                }
+
+                defaultValue = type.convert(defaultText);
+            }
+
+            return new Element(body, type, false, isOptional, isRest, defaultValue);
+        }
+    }
+
+    private static final class Form
+    {
+        private final int index;
+        private final Element[] elements;
+        private final Map<String, Integer> slots = new HashMap<>();
+
+        private Form(int index, String form)
+        {
+            this.index = index;
+            final String[] split = form.trim().split("\\s+");
+            final List<Element> elements = new ArrayList<>(split.length);
+            for (String element : split)
+            {
+                if (element.isEmpty())
+                {
+                    continue;
+                }
+
+                if (!elements.isEmpty() && elements.get(elements.size() - 1).isRest)
+                {
+                    throw new IllegalArgumentException("Nothing can follow '...' in syntax '" + form + "'");
+                }
+
+                final Element parsed = Element.parse(element, form);
+                if (!parsed.isKeyword)
+                {
+                    slots.put(parsed.name, elements.size());
+                }
+
+                elements.add(parsed);
+            }
+
+            this.elements = elements.toArray(new Element[elements.size()]);
+        }
+
+        @Nullable
+        private Arguments match(String input, Words words)
+        {
+            final Object[] values = new Object[elements.length];
+            final int numWords = words.words.size();
+            int next = 0;
+            for (int i = 0; i < elements.length; i++)
+            {
+                final Element element = elements[i];
+                if (element.isRest)
+                {
+                    if (next < numWords)
+                    {
+                        values[i] = input.substring(words.starts.get(next)).trim();
+                        next = numWords;
+                    }
+                    else if (!element.isOptional)
+                    {
+                        return null;
+                    }
+
+                    continue;
+                }
+
+                final String word = (next < numWords ? words.words.get(next) : null);
+                final boolean isMatch = (word != null && (element.isKeyword
+                        ? element.name.equalsIgnoreCase(word) : element.type.accepts(word)));
+                if (isMatch)
+                {
+                    values[i] = (element.isKeyword ? word : element.type.convert(word));
+                    next++;
+                }
+                else if (element.isOptional)
+                {
+                    values[i] = element.defaultValue;
+                }
+                else
+                {
+                    return null;
+                }
+            }
+
+            // Every word has to be used
+            return (next == numWords ? new Arguments(this, values) : null);
+        }
+    }
+
+    /**
+     * The values of a successfully parsed command.
+     *
+     * @since 3.0
+     */
+    public static final class Arguments
+    {
+        private final Form form;
+        private final Object[] values;
+
+        private Arguments(Form form, Object[] values)
+        {
+            this.form = form;
+            this.values = values;
+        }
+
+        /**
+         * @return Which form matched, starting at 0 for the first passed into {@link CommandSyntax#compile(String...)}.
+         *
+         * @since 3.0
+         */
+        public int getForm()
+        {
+            return form.index;
+        }
+
+        /**
+         * @return Whether the argument {@code name} was entered, or has a default value.
+         *
+         * @since 3.0
+         */
+        public boolean has(String name)
+        {
+            final Integer slot = form.slots.get(name);
+            return (slot != null && values[slot] != null);
+        }
+
+        private Object get(String name)
+        {
+            final Integer slot = form.slots.get(name);
+            if (slot == null || values[slot] == null)
+            {
+                throw new IllegalArgumentException("No value for argument '" + name + "' in this form");
+            }
+
+            return values[slot];
+        }
+
+        /**
+         * @return The argument {@code name} as it was entered.
+         *
+         * @throws IllegalArgumentException if {@link #has(String)} would return {@code false}.
+         * @since 3.0
+         */
+        public String getString(String name)
+        {
+            return String.valueOf(get(name));
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@link #has(String)} would return {@code false}.
+         * @throws ClassCastException       if the argument isn't numeric.
+         * @since 3.0
+         */
+        public int getInt(String name)
+        {
+            return ((Number) get(name)).intValue();
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@link #has(String)} would return {@code false}.
+         * @throws ClassCastException       if the argument isn't numeric.
+         * @since 3.0
+         */
+        public long getLong(String name)
+        {
+            return ((Number) get(name)).longValue();
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@link #has(String)} would return {@code false}.
+         * @throws ClassCastException       if the argument isn't numeric.
+         * @since 3.0
+         */
+        public float getFloat(String name)
+        {
+            return ((Number) get(name)).floatValue();
+        }
+
+        /**
+         * @throws IllegalArgumentException if {@link #has(String)} would return {@code false}.
+         * @throws ClassCastException       if the argument isn't numeric.
+         * @since 3.0
+         */
+        public double getDouble(String name)
+        {
+            return ((Number) get(name)).doubleValue();
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A case-insensitive prefix trie over an alphabetically sorted list of command names, used by the overlay's tab
+ * completion. Because the list is sorted, the commands starting with any prefix form a contiguous range of it, so each
+ * node only needs to know where its range starts and ends.
+ * <p>
+ * Completing a command walks the trie once along the entered text, then steps to the neighbouring command in the
+ * list. Nothing is sorted, compared or allocated per keypress. Tries are built by {@link CommandStore} whenever commands
+ * are reloaded, one per {@link BaseCommand.CommandContext}.
+ */
+final class CommandTrie
+{
+    private final List<String> names;
+    private final Node root;
+
+    /**
+     * @param names Command names, sorted with {@link String#CASE_INSENSITIVE_ORDER} and unique ignoring case.
+     */
+    CommandTrie(List<String> names)
+    {
+        this.names = names;
+        root = build(0, names.size(), 0);
+    }
+
+    // Same folding as String.CASE_INSENSITIVE_ORDER and regionMatches(ignoreCase), so the trie agrees with the sort
+    private static char fold(char ch)
+    {
+        return Character.toLowerCase(Character.toUpperCase(ch));
+    }
+
+    private Node build(int start, int end, int depth)
+    {
+        // A name exactly as long as this node's prefix sorts before every longer name sharing it
+        final boolean isTerminal = (start < end && names.get(start).length() == depth);
+        final List<Character> keys = new ArrayList<>();
+        final List<Node> children = new ArrayList<>();
+        for (int i = (isTerminal ? start + 1 : start); i < end; )
+        {
+            final char key = fold(names.get(i).charAt(depth));
+            int groupEnd = i + 1;
+            while (groupEnd < end && fold(names.get(groupEnd).charAt(depth)) == key) groupEnd++;
+            keys.add(key);
+            children.add(build(i, groupEnd, depth + 1));
+            i = groupEnd;
+        }
+
+        final char[] keyArray = new char[keys.size()];
+        for (int i = 0; i < keyArray.length; i++)
+        {
+            keyArray[i] = keys.get(i);
+        }
+
+        return new Node(start, end, isTerminal, keyArray, children.toArray(new Node[children.size()]));
+    }
+
+    /**
+     * Finds the command to replace the current word with when tab is pressed.
+     *
+     * @param input       The text being edited.
+     * @param start       Where the current word starts in {@code input}.
+     * @param prefixEnd   Where the prefix to complete ends (the cursor position).
+     * @param wordEnd     Where the current word ends. The word is what the previous tab press completed to, if any.
+     * @param isBackwards Whether to cycle to the previous match instead of the next one.
+     *
+     * @return The first command starting with the prefix that sorts after the current word (or the last sorting before
+     *         it if {@code isBackwards}), wrapping around to the first (or last) command with the prefix if there are
+     *         none. Returns {@code null} if no commands start with the prefix.
+     */
+    @Nullable
+    String complete(CharSequence input, int start, int prefixEnd, int wordEnd, boolean isBackwards)
+    {
+        Node node = root;
+        for (int i = start; i < prefixEnd; i++)
+        {
+            node = node.getChild(fold(input.charAt(i)));
+            if (node == null)
+            {
+                return null;
+            }
+        }
+
+        final int rangeStart = node.start, rangeEnd = node.end;
+        if (rangeStart == rangeEnd)
+        {
+            return null;
+        }
+
+        // Find where the rest of the word would sort among the commands sharing the prefix
+        int firstAfter = -1;
+        for (int i = prefixEnd; i < wordEnd; i++)
+        {
+            final int childIndex = node.indexOf(fold(input.charAt(i)));
+            if (childIndex < 0)
+            {
+                // No command continues this way; everything in the children sorting after this character is later
+                final int insertAt = -(childIndex + 1);
+                firstAfter = (insertAt < node.children.length ? node.children[insertAt].start : node.end);
+                break;
+            }
+
+            node = node.children[childIndex];
+        }
+
+        int lastBefore;
+        if (firstAfter < 0)
+        {
+            // The whole word is a prefix in the trie: a command matching it exactly sorts first, all others after it
+            lastBefore = node.start - 1;
+            firstAfter = (node.isTerminal ? node.start + 1 : node.start);
+        }
+        else
+        {
+            lastBefore = firstAfter - 1;
+        }
+
+        if (isBackwards)
+        {
+            return names.get(lastBefore >= rangeStart ? lastBefore : rangeEnd - 1);
+        }
+
+        return names.get(firstAfter < rangeEnd ? firstAfter : rangeStart);
+    }
+
+    private static final class Node
+    {
+        private final int start, end; // Range of names starting with this node's prefix
+        private final boolean isTerminal; // Whether names[start] is this node's prefix
+        private final char[] keys; // Sorted
+        private final Node[] children;
+
+        private Node(int start, int end, boolean isTerminal, char[] keys, Node[] children)
+        {
+            this.start = start;
+            this.end = end;
+            this.isTerminal = isTerminal;
+            this.keys = keys;
+            this.children = children;
+        }
+
+        private int indexOf(char key)
+        {
+            return Arrays.binarySearch(keys, key);
+        }
+
+        @Nullable
+        private Node getChild(char key)
+        {
+            final int index = indexOf(key);
+            return (index < 0 ? null : children[index]);
+        }
+    }
+}
@@ -10,9 +10,7 @@ import com.fs.starfarer.api.fleet.FleetMemberAPI;
 import com.fs.starfarer.api.impl.campaign.ids.Submarkets;
 import com.fs.starfarer.api.impl.campaign.ids.Tags;
 import com.fs.starfarer.api.loading.IndustrySpecAPI;
-import com.fs.starfarer.api.util.Pair;
 import org.jetbrains.annotations.Nullable;
-import org.lazywizard.console.commands.List_;
 
 import java.text.NumberFormat;
 import java.util.*;
@@ -22,101 +20,25 @@ public class CommandUtils
 {
     private static final boolean ENABLE_TYPO_CORRECTION = true;
     private static final String COMBAT_PDATA_ID = "lw_console_plugins";
+    // "Did you mean" suggestions are only shown when nothing was close enough to be used, so they need a lower bar
+    private static final int MAX_SUGGESTIONS = 5;
+    private static final double MIN_SUGGESTION_SCORE = 0.75;
 
     /**
-     * Returns normalized score, with 0.0 meaning no similarity at all,
-     * and 1.0 meaning full equality.
+     * Scores every string in {@code toSearch} against {@code id}, returning the first perfect match or else the
+     * highest scoring string (the earliest on ties). The search goes through a {@link StringMatchIndex}, which gives
+     * the same result without scoring most of the strings.
+     *
+     * @return An entry whose key is the best match (or {@code null} if nothing scored above {@code minScore}), and
+     *         whose value is its score (or {@code minScore} if there was no match).
      */
-    // Taken from: https://github.com/larsga/Duke/blob/master/duke-core/src/main/java/no/priv/garshol/duke/comparators/JaroWinkler.java
-    private static double calcSimilarity(String s1, String s2)
+    private static Map.Entry<String, Double> findBestMatch(char[] lowercaseId, Collection<String> toSearch,
+                                                           double minScore)
     {
-        if (s1.equals(s2))
-        {
-            return 1.0;
-        }
-
-        // ensure that s1 is shorter than or same length as s2
-        if (s1.length() > s2.length())
-        {
-            String tmp = s2;
-            s2 = s1;
-            s1 = tmp;
-        }
-
-        // (1) find the number of characters the two strings have in common.
-        // note that matching characters can only be half the length of the
-        // longer string apart.
-        int maxdist = s2.length() / 2;
-        int c = 0; // count of common characters
-        int t = 0; // count of transpositions
-        int prevpos = -1;
-        for (int ix = 0; ix < s1.length(); ix++)
-        {
-            char ch = s1.charAt(ix);
-
-            // now try to find it in s2
-            for (int ix2 = Math.max(0, ix - maxdist);
-                 ix2 < Math.min(s2.length(), ix + maxdist);
-                 ix2++)
-            {
-                if (ch == s2.charAt(ix2))
-                {
-                    c++; // we found a common character
-                    if (prevpos != -1 && ix2 < prevpos)
-                    {
-                        t++; // moved back before earlier
-                    }
-                    prevpos = ix2;
-                    break;
-                }
-            }
-        }
-
-        // we don't divide t by 2 because as far as we can tell, the above
-        // code counts transpositions directly.
-        // System.out.println("c: " + c);
-        // System.out.println("t: " + t);
-        // System.out.println("c/m: " + (c / (double) s1.length()));
-        // System.out.println("c/n: " + (c / (double) s2.length()));
-        // System.out.println("(c-t)/c: " + ((c - t) / (double) c));
-        // we might have to give up right here
-        if (c == 0)
-        {
-            return 0.0;
-        }
-
-        // first compute the score
-        double score = ((c / (double) s1.length())
-                + (c / (double) s2.length())
-                + ((c - t) / (double) c)) / 3.0;
-
-        // (2) common prefix modification
-        int p = 0; // length of prefix
-        int last = Math.min(4, s1.length());
-        while (p < last && s1.charAt(p) == s2.charAt(p))
-        {
-            p++;
-        }
-
-        score += ((p * (1 - score)) / 10);
-
-        // (3) longer string adjustment
-        // I'm confused about this part. Winkler's original source code includes
-        // it, and Yancey's 2005 paper describes it. However, Winkler's list of
-        // test cases in his 2006 paper does not include this modification. So
-        // is this part of Jaro-Winkler, or is it not? Hard to say.
-        if (s1.length() >= 5 // both strings at least 5 characters long
-                && c - p >= 2// at least two common characters besides prefix
-                && c - p >= ((s1.length() - p) / 2)) // fairly rich in common chars
-        {
-            score = score + ((1 - score) * ((c - (p + 1))
-                    / ((double) ((s1.length() + s2.length())
-                    - (2 * (p - 1))))));
-        }
-
-        // (4) similar characters adjustment
-        // the same holds for this as for (3) above.
-        return score;
+        final StringMatchIndex index = StringMatchIndex.getIndex(toSearch);
+        final int bestIndex = index.findBest(lowercaseId, minScore);
+        return new AbstractMap.SimpleImmutableEntry<>(bestIndex < 0 ? null : index.getId(bestIndex),
+                index.getLastScore());
     }
 
     public static String findBestStringMatch(String id, Collection<String> toSearch)
@@ -126,27 +48,8 @@ public class CommandUtils
             return id;
         }
 
-        id = id.toLowerCase();
-        String bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        for (String str : toSearch)
-        {
-            double distance = calcSimilarity(id, str.toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return str;
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = str;
-            }
-        }
-
-        return bestMatch;
+        return findBestMatch(JaroWinkler.toLowerCase(id), toSearch,
+                Console.getSettings().getTypoCorrectionThreshold()).getKey();
     }
 
     /**
@@ -167,22 +70,21 @@ public class CommandUtils
 
             id = id.toLowerCase();
 
-            for (String str : toSearch)
+            final Map.Entry<String, Double> match = findBestMatch(JaroWinkler.toLowerCase(id), toSearch,
+                    closestDistance);
+            if (match.getKey() == null)
             {
-                double distance = calcSimilarity(id, str.toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return new AbstractMap.SimpleImmutableEntry<>(id, toSearch);
-                }
+                continue;
+            }
 
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = str;
-                    bestSource = toSearch;
-                }
+            if (match.getValue() == 1.0)
+            {
+                return new AbstractMap.SimpleImmutableEntry<>(id, toSearch);
             }
+
+            closestDistance = match.getValue();
+            bestMatch = match.getKey();
+            bestSource = toSearch;
         }
 
         return new AbstractMap.SimpleImmutableEntry<>(bestMatch, bestSource);
@@ -195,27 +97,102 @@ public class CommandUtils
             return new AbstractMap.SimpleImmutableEntry<>(id, 1.0);
         }
 
-        id = id.toLowerCase();
-        String bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
+        return findBestMatch(JaroWinkler.toLowerCase(id), toSearch,
+                Console.getSettings().getTypoCorrectionThreshold());
+    }
 
-        for (String str : toSearch)
+    /**
+     * Finds the strings most similar to {@code id} across all of {@code sources} in a single pass over each, without
+     * sorting or scoring every string.
+     *
+     * @param id         The string to search for.
+     * @param maxResults The maximum number of matches to return.
+     * @param minScore   Only strings scoring higher than this are returned.
+     * @param sources    The collections to search.
+     *
+     * @return Up to {@code maxResults} entries whose keys are the matches and whose values are their similarity to
+     *         {@code id}, best first. Ties go to the source passed first, then to the earlier string in it.
+     *
+     * @since 3.0
+     */
+    @SafeVarargs
+    public static List<Map.Entry<String, Double>> findBestStringMatches(String id, int maxResults, double minScore,
+                                                                        Collection<String>... sources)
+    {
+        final List<Map.Entry<String, Double>> matches = new ArrayList<>();
+        if (maxResults <= 0)
         {
-            double distance = calcSimilarity(id, str.toLowerCase());
+            return matches;
+        }
 
-            if (distance == 1.0)
+        final char[] lowercaseId = JaroWinkler.toLowerCase(id);
+        final int[] indexes = new int[maxResults];
+        final double[] scores = new double[maxResults];
+        for (Collection<String> toSearch : sources)
+        {
+            final StringMatchIndex index = StringMatchIndex.getIndex(toSearch);
+            final int numFound = index.findTop(lowercaseId, minScore, indexes, scores);
+            for (int i = 0; i < numFound; i++)
             {
-                return new AbstractMap.SimpleImmutableEntry<>(str, 1.0);
+                matches.add(new AbstractMap.SimpleImmutableEntry<>(index.getId(indexes[i]), scores[i]));
             }
+        }
 
-            if (distance > closestDistance)
+        // Only needed when merging sources; a stable sort keeps earlier sources first on ties
+        if (sources.length > 1)
+        {
+            Collections.sort(matches, new Comparator<Map.Entry<String, Double>>()
             {
-                closestDistance = distance;
-                bestMatch = str;
-            }
+                @Override
+                public int compare(Map.Entry<String, Double> o1, Map.Entry<String, Double> o2)
+                {
+                    return Double.compare(o2.getValue(), o1.getValue());
+                }
+            });
+        }
+
+        return (matches.size() > maxResults ? new ArrayList<>(matches.subList(0, maxResults)) : matches);
+    }
+
+    /**
+     * Returns a "did you mean" message listing the strings in {@code sources} most similar to {@code id}, for use in
+     * not-found errors. Suggestions use a lower similarity threshold than typo correction, as they are only shown once
+     * typo correction failed to find anything.
+     *
+     * @return A message starting with a line break, or an empty {@link String} if nothing was similar enough.
+     *
+     * @since 3.0
+     */
+    @SafeVarargs
+    public static String getSuggestions(String id, Collection<String>... sources)
+    {
+        return formatSuggestions(findBestStringMatches(id, MAX_SUGGESTIONS,
+                Math.min(MIN_SUGGESTION_SCORE, Console.getSettings().getTypoCorrectionThreshold()), sources));
+    }
+
+    /**
+     * Formats the results of {@link #findBestStringMatches(String, int, double, Collection[])} as a "did you mean"
+     * message, one match per line.
+     *
+     * @return A message starting with a line break, or an empty {@link String} if {@code matches} is empty.
+     *
+     * @since 3.0
+     */
+    public static String formatSuggestions(List<Map.Entry<String, Double>> matches)
+    {
+        if (matches.isEmpty())
+        {
+            return "";
         }
 
-        return new AbstractMap.SimpleImmutableEntry<>(bestMatch, closestDistance);
+        final StringBuilder sb = new StringBuilder("\nDid you mean:");
+        for (Map.Entry<String, Double> match : matches)
+        {
+            sb.append("\n - ").append(match.getKey()).append(" (")
+                    .append(Math.round(match.getValue() * 100.0)).append("% match)");
+        }
+
+        return sb.toString();
     }
 
     public static String bestMatch(List<Map.Entry<String, Float>> toSearch)
@@ -239,76 +216,25 @@ public class CommandUtils
         return bestMatch;
     }
 
+    // These are checked without throwing exceptions; see CommandSyntax for parsing whole commands
     public static boolean isInteger(String arg)
     {
-        if (arg.isEmpty())
-        {
-            return false;
-        }
-
-        try
-        {
-            Integer.parseInt(arg);
-            return true;
-        }
-        catch (NumberFormatException ex)
-        {
-            return false;
-        }
+        return CommandSyntax.isIntegral(arg, Integer.MIN_VALUE, Integer.MAX_VALUE);
     }
 
     public static boolean isLong(String arg)
     {
-        if (arg.isEmpty())
-        {
-            return false;
-        }
-
-        try
-        {
-            Long.parseLong(arg);
-            return true;
-        }
-        catch (NumberFormatException ex)
-        {
-            return false;
-        }
+        return CommandSyntax.isIntegral(arg, Long.MIN_VALUE, Long.MAX_VALUE);
     }
 
     public static boolean isFloat(String arg)
     {
-        if (arg.isEmpty())
-        {
-            return false;
-        }
-
-        try
-        {
-            Float.parseFloat(arg);
-            return true;
-        }
-        catch (NumberFormatException ex)
-        {
-            return false;
-        }
+        return CommandSyntax.isDecimal(arg);
     }
 
     public static boolean isDouble(String arg)
     {
-        if (arg.isEmpty())
-        {
-            return false;
-        }
-
-        try
-        {
-            Double.parseDouble(arg);
-            return true;
-        }
-        catch (NumberFormatException ex)
-        {
-            return false;
-        }
+        return CommandSyntax.isDecimal(arg);
     }
 
     public static String format(int toFormat)
@@ -365,96 +291,13 @@ public class CommandUtils
     @Nullable
     public static FactionAPI findBestFactionMatch(String name)
     {
-        name = name.toLowerCase();
-        FactionAPI bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        // Check IDs first in case multiple factions share the same name
-        for (FactionAPI faction : Global.getSector().getAllFactions())
-        {
-            double distance = calcSimilarity(name, faction.getId().toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return faction;
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = faction;
-            }
-        }
-
-        // Search again by name if no matching ID is found
-        if (bestMatch == null)
-        {
-            for (FactionAPI faction : Global.getSector().getAllFactions())
-            {
-                double distance = calcSimilarity(name, faction.getDisplayName().toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return faction;
-                }
-
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = faction;
-                }
-            }
-        }
-
-        return bestMatch;
+        return SectorNameIndex.findFaction(name);
     }
 
     @Nullable
     public static MarketAPI findBestMarketMatch(String name)
     {
-        name = name.toLowerCase();
-        MarketAPI bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        // Check IDs first in case multiple markets share the same name
-        final List<MarketAPI> markets = Global.getSector().getEconomy().getMarketsCopy();
-        for (MarketAPI market : markets)
-        {
-            double distance = calcSimilarity(name, market.getId().toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return market;
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = market;
-            }
-        }
-
-        // Search again by name if no matching ID is found
-        if (bestMatch == null)
-        {
-            for (MarketAPI market : markets)
-            {
-                double distance = calcSimilarity(name, market.getName().toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return market;
-                }
-
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = market;
-                }
-            }
-        }
-
-        return bestMatch;
+        return SectorNameIndex.findMarket(name);
     }
 
     @Nullable
@@ -465,49 +308,7 @@ public class CommandUtils
             return Global.getSettings().getMarketConditionSpec(name);
         }
 
-        name = name.toLowerCase();
-        String bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        // Check IDs first in case multiple conditions share the same name
-        final List<Pair<String, String>> pairs = List_.getMarketConditionIdsWithNames();
-        for (Pair<String, String> pair : pairs)
-        {
-            final String id = pair.one;
-            double distance = calcSimilarity(name, id.toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return Global.getSettings().getMarketConditionSpec(id);
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = id;
-            }
-        }
-
-        // Search again by name if no matching ID is found
-        if (bestMatch == null)
-        {
-            for (Pair<String, String> pair : pairs)
-            {
-                double distance = calcSimilarity(name, pair.two.toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return Global.getSettings().getMarketConditionSpec(pair.one);
-                }
-
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = pair.one;
-                }
-            }
-        }
-
+        final String bestMatch = SectorNameIndex.findMarketCondition(name);
         if (bestMatch == null)
         {
             return null;
@@ -519,13 +320,13 @@ public class CommandUtils
     @Nullable
     public static IndustrySpecAPI findBestIndustryMatch(String name)
     {
-        name = name.toLowerCase();
         IndustrySpecAPI bestMatch = null;
         double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
+        final JaroWinkler.Query query = new JaroWinkler.Query(name);
 
         for (IndustrySpecAPI industry : Global.getSettings().getAllIndustrySpecs())
         {
-            double distance = calcSimilarity(name, industry.getId().toLowerCase());
+            double distance = query.score(industry.getId(), closestDistance);
 
             if (distance == 1.0)
             {
@@ -544,7 +345,7 @@ public class CommandUtils
         {
             for (IndustrySpecAPI industry : Global.getSettings().getAllIndustrySpecs())
             {
-                double distance = calcSimilarity(name, industry.getName().toLowerCase());
+                double distance = query.score(industry.getName(), closestDistance);
 
                 if (distance == 1.0)
                 {
@@ -564,109 +365,27 @@ public class CommandUtils
 
     public static LocationAPI findBestLocationMatch(String name)
     {
-        name = name.toLowerCase();
-        LocationAPI bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        // Check IDs first in case multiple tokens share the same name
-        for (LocationAPI loc : Global.getSector().getAllLocations())
-        {
-            double distance = calcSimilarity(name, loc.getId().toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return loc;
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = loc;
-            }
-        }
-
-        // Search again by name if no matching ID is found
-        if (bestMatch == null)
-        {
-            for (LocationAPI loc : Global.getSector().getAllLocations())
-            {
-                double distance = calcSimilarity(name, loc.getName().toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return loc;
-                }
-
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = loc;
-                }
-            }
-        }
-
-        return bestMatch;
+        return SectorNameIndex.findLocation(name);
     }
 
     @Nullable
     public static StarSystemAPI findBestSystemMatch(String name)
     {
-        name = name.toLowerCase();
-        StarSystemAPI bestMatch = null;
-        double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
-
-        // Check IDs first in case multiple tokens share the same name
-        for (StarSystemAPI loc : Global.getSector().getStarSystems())
-        {
-            double distance = calcSimilarity(name, loc.getId().toLowerCase());
-
-            if (distance == 1.0)
-            {
-                return loc;
-            }
-
-            if (distance > closestDistance)
-            {
-                closestDistance = distance;
-                bestMatch = loc;
-            }
-        }
-
-        // Search again by name if no matching ID is found
-        if (bestMatch == null)
-        {
-            for (StarSystemAPI loc : Global.getSector().getStarSystems())
-            {
-                double distance = calcSimilarity(name, loc.getBaseName().toLowerCase());
-
-                if (distance == 1.0)
-                {
-                    return loc;
-                }
-
-                if (distance > closestDistance)
-                {
-                    closestDistance = distance;
-                    bestMatch = loc;
-                }
-            }
-        }
-
-        return bestMatch;
+        return SectorNameIndex.findSystem(name);
     }
 
     @Nullable
     public static SectorEntityToken findBestTokenMatch(String name,
                                                        Collection<SectorEntityToken> toSearch)
     {
-        name = name.toLowerCase();
         SectorEntityToken bestMatch = null;
         double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
+        final JaroWinkler.Query query = new JaroWinkler.Query(name);
 
         // Check IDs first in case multiple tokens share the same name
         for (SectorEntityToken token : toSearch)
         {
-            double distance = calcSimilarity(name, token.getId().toLowerCase());
+            double distance = query.score(token.getId(), closestDistance);
 
             if (distance == 1.0)
             {
@@ -685,8 +404,8 @@ public class CommandUtils
         {
             for (SectorEntityToken token : toSearch)
             {
-                double distance = Math.max(calcSimilarity(name, token.getName().toLowerCase()),
-                        calcSimilarity(name, token.getFullName().toLowerCase()));
+                double distance = Math.max(query.score(token.getName(), closestDistance),
+                        query.score(token.getFullName(), closestDistance));
 
                 if (distance == 1.0)
                 {
@@ -707,13 +426,13 @@ public class CommandUtils
     @Nullable
     public static OfficerDataAPI findBestOfficerMatch(String name, CampaignFleetAPI fleet)
     {
-        name = name.toLowerCase();
         OfficerDataAPI bestMatch = null;
         double closestDistance = Console.getSettings().getTypoCorrectionThreshold();
+        final JaroWinkler.Query query = new JaroWinkler.Query(name);
 
         for (OfficerDataAPI officer : fleet.getFleetData().getOfficersCopy())
         {
-            double distance = calcSimilarity(name, officer.getPerson().getNameString().toLowerCase());
+            double distance = query.score(officer.getPerson().getNameString(), closestDistance);
 
             if (distance == 1.0)
             {
@@ -760,13 +479,7 @@ public class CommandUtils
 
         if (tmp == null && ENABLE_TYPO_CORRECTION)
         {
-            final Set<SectorEntityToken> toSearch = new HashSet<>();
-            for (String tag : validTags)
-            {
-                toSearch.addAll(location.getEntitiesWithTag(tag));
-            }
-
-            tmp = findBestTokenMatch(toFind, toSearch);
+            tmp = SectorNameIndex.findToken(toFind, location, validTags);
         }
 
         return tmp;
@@ -57,6 +57,19 @@ public class CommonStrings
      * @since 3.0
      */
     public static final String PATH_LISTENER_CSV = "data/console/command_listeners.csv";
+    /**
+     * The directory that command scripts bundled with mods are loaded from by the Exec command.
+     *
+     * @since 3.0
+     */
+    public static final String PATH_SCRIPTS = "data/console/scripts/";
+    /**
+     * The directory (in Starsector's common data folder) that the player's own command scripts are loaded from by the
+     * Exec command. Takes priority over {@link #PATH_SCRIPTS}.
+     *
+     * @since 3.0
+     */
+    public static final String PATH_COMMON_SCRIPTS = "config/lw_console_scripts/";
     /**
      * Commands with this tag are considered cheats, and will be disabled if the applicable setting is toggled.
      */
@@ -19,11 +19,7 @@ import org.lwjgl.opengl.Display;
 
 import java.io.IOException;
 import java.security.CodeSource;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Set;
-import java.util.regex.Pattern;
 
 /**
  * The main class of the console mod. Most of its methods aren't publicly
@@ -37,9 +33,20 @@ public class Console
     private static final Logger Log = Global.getLogger(Console.class);
     private static LazyFont font;
     // Stores the output of the console until it can be displayed
+    // Messages can be shown from the background threads used while loading, so access is synchronized
+    private static final Object outputLock = new Object();
     private static StringBuilder output = new StringBuilder();
+    // While a script is running, its output is collected here and shown all at once when it finishes
+    @Nullable private static StringBuilder batchOutput = null;
+    private static int batchDepth = 0;
+    // While a read-only command runs, a copy of its output is collected here for OutputCache
+    @Nullable private static StringBuilder capturedOutput = null;
     private static String lastCommand;
     private static CommandContext currentContext = CommandContext.COMBAT_MISSION;
+    // Input is only ever parsed on the main thread, so these are reused for every command entered
+    private static final InputLexer lexer = new InputLexer(), aliasLexer = new InputLexer(),
+            scheduledLexer = new InputLexer();
+    private static final InputLexer.ArgumentList currentArgs = new InputLexer.ArgumentList();
 
     /**
      * Forces the console to reload its settings from the settings file.
@@ -52,8 +59,18 @@ public class Console
      */
     public static void reloadSettings() throws IOException, JSONException
     {
-        final JSONObject settingsFile = Global.getSettings().loadJSON(CommonStrings.PATH_SETTINGS);
+        applySettings(loadSettings());
+    }
 
+    // Only reads the settings file, so this is safe to call from a background thread
+    static JSONObject loadSettings() throws IOException, JSONException
+    {
+        return Global.getSettings().loadJSON(CommonStrings.PATH_SETTINGS);
+    }
+
+    // Loads the font, so this must be called from the main thread
+    static void applySettings(JSONObject settingsFile) throws JSONException
+    {
         // The sprite font used by the console overlay
         try
         {
@@ -85,6 +102,27 @@ public class Console
         return currentContext;
     }
 
+    /**
+     * Returns the arguments of the command that is currently running, already split up. Arguments are separated by
+     * whitespace; text wrapped in double quotes counts as a single argument (with the quotes removed), and a
+     * backslash escapes the character after it.
+     * <p>
+     * This is the same input a command receives as the {@code args} parameter of
+     * {@link BaseCommand#runCommand(String, CommandContext)}, so commands can use whichever is more convenient. Quotes
+     * and backslashes are only removed here; {@code args} keeps them exactly as they were entered.
+     * <p>
+     * The returned {@link List} is read-only and is reused for every command, so it is only valid until
+     * {@code runCommand()} returns. Copy it if you need to keep it around.
+     *
+     * @return The arguments of the currently running command, or an empty {@link List} if no command is running.
+     *
+     * @since 3.0
+     */
+    public static List<String> getParsedArgs()
+    {
+        return currentArgs;
+    }
+
     static String getLastCommand()
     {
         return lastCommand;
@@ -122,12 +160,93 @@ public class Console
     public static void showMessage(Object message, Level logLevel)
     {
         // Add message to the output queue
-        output.append('\n').append(message);
+        synchronized (outputLock)
+        {
+            if (capturedOutput != null)
+            {
+                capturedOutput.append('\n').append(message);
+            }
+
+            if (batchOutput != null)
+            {
+                batchOutput.append('\n').append(message);
+
+                // Batched output is logged all at once, but problems should still be logged immediately
+                if (logLevel.isGreaterOrEqual(Level.WARN))
+                {
+                    Log.log(logLevel, message);
+                }
+
+                return;
+            }
+
+            output.append('\n').append(message);
+        }
 
         // Also add to Starsector's log
         Log.log(logLevel, message);
     }
 
+    // Collects all output until the matching endBatch() call, then shows (and logs) it as a single message
+    // Batches can be nested; only the outermost one is flushed
+    static void beginBatch()
+    {
+        synchronized (outputLock)
+        {
+            if (batchDepth++ == 0)
+            {
+                batchOutput = new StringBuilder();
+            }
+        }
+    }
+
+    static void endBatch()
+    {
+        final String toShow;
+        synchronized (outputLock)
+        {
+            if (batchDepth == 0 || --batchDepth > 0)
+            {
+                return;
+            }
+
+            toShow = batchOutput.toString();
+            batchOutput = null;
+        }
+
+        if (!toShow.isEmpty())
+        {
+            // Every message in the batch started with a newline
+            showMessage(toShow.substring(1), Level.INFO);
+        }
+    }
+
+    // Copies everything shown until endCapture() is called; returns false if something is already being captured
+    static boolean beginCapture()
+    {
+        synchronized (outputLock)
+        {
+            if (capturedOutput != null)
+            {
+                return false;
+            }
+
+            capturedOutput = new StringBuilder();
+            return true;
+        }
+    }
+
+    static String endCapture()
+    {
+        synchronized (outputLock)
+        {
+            final String captured = (capturedOutput == null || capturedOutput.length() == 0
+                    ? "" : capturedOutput.substring(1)); // Every message started with a newline
+            capturedOutput = null;
+            return captured;
+        }
+    }
+
     /**
      * Displays a message to the user. The message will be formatted and shown
      * to the player when they reach a section of the game where it can be
@@ -255,47 +374,95 @@ public class Console
     }
     //</editor-fold>
 
-    private static CommandResult runCommand(String input, CommandContext context)
+    private static CommandResult runAlias(AliasTemplate alias, String args, CommandContext context)
     {
-        // Split input into command and arguments
-        String[] tmp = input.split(" ", 2);
-        String com = tmp[0].toLowerCase();
-        String args = (tmp.length > 1 ? tmp[1] : "");
-        CommandResult result;
+        final AliasTemplate.Expansion expansion = alias.expand(args);
+        if (expansion == null)
+        {
+            showMessage(alias.getError(), Level.ERROR);
+            return CommandResult.ERROR;
+        }
 
-        // Support for clearing the overlay history
-        if ("clear".equals(com))
+        // Nested aliases were already expanded, so these can go straight to the commands themselves
+        final InputLexer.ArgumentList previousArgs = currentArgs.save();
+        CommandResult result = CommandResult.SUCCESS;
+        try
         {
-            output.setLength(0);
-            ConsoleOverlay.clear();
-            return CommandResult.SUCCESS;
+            for (int i = 0; i < expansion.commands.length; i++)
+            {
+                aliasLexer.lexArgs(expansion.commands[i], expansion.args[i]);
+                aliasLexer.bindArgs(0, currentArgs);
+                final CommandResult tmp = runCommand(expansion.inputs[i], expansion.commands[i],
+                        expansion.args[i], context);
+                if (result == CommandResult.SUCCESS)
+                {
+                    result = tmp;
+                }
+            }
+        }
+        finally
+        {
+            currentArgs.restore(previousArgs);
+        }
+
+        return result;
+    }
+
+    private static CommandResult runCommand(String input, String com, String args, CommandContext context)
+    {
+        return runCommand(input, com, args, CommandStore.retrieveCommand(com), context);
+    }
+
+    /**
+     * Runs a command that was already looked up, such as a line of a compiled script.
+     *
+     * @param tokens The arguments split into tokens, returned by {@link #getParsedArgs()} while the command runs.
+     *               The calling command's arguments are restored afterwards.
+     * @param stored The command to run, or {@code null} if no command named {@code com} exists.
+     */
+    static CommandResult runCompiledCommand(String input, String com, String args, String[] tokens,
+                                            @Nullable StoredCommand stored, CommandContext context)
+    {
+        final InputLexer.ArgumentList previousArgs = currentArgs.save();
+        currentArgs.bind(tokens, 0, tokens.length);
+        try
+        {
+            return runCommand(input, com, args, stored, context);
         }
+        finally
+        {
+            currentArgs.restore(previousArgs);
+        }
+    }
 
-        // Alias with arguments support
-        if (CommandStore.getAliases().containsKey(com))
+    private static CommandResult runCommand(String input, String com, String args, @Nullable StoredCommand stored,
+                                            CommandContext context)
+    {
+        CommandResult result;
+
+        // Support for clearing the overlay history
+        if ("clear".equals(com))
         {
-            final String rawAlias = CommandStore.getAliases().get(com);
-            tmp = rawAlias.split(" ", 2);
-            com = tmp[0];
-            if (tmp.length > 1)
+            synchronized (outputLock)
             {
-                args = tmp[1] + (args.isEmpty() ? "" : " " + args);
+                output.setLength(0);
             }
+
+            ConsoleOverlay.clear();
+            return CommandResult.SUCCESS;
         }
 
-        final List<CommandListener> listeners = CommandStore.getListeners();
+        // Only listeners that asked to hear about this command are notified
+        final CommandListener[] listeners = CommandStore.getListenersFor(com);
         CommandListener interceptor = null;
         try
         {
-            StoredCommand stored = CommandStore.retrieveCommand(com);
             if (stored == null)
             {
-                final String bestMatch = CommandUtils.findBestStringMatch(com,
-                        CommandStore.getLoadedCommands());
-                if (bestMatch != null)
+                final String suggestions = CommandUtils.getSuggestions(com, CommandStore.getLoadedCommands());
+                if (!suggestions.isEmpty())
                 {
-                    showMessage("No such command \"" + com + "\" registered,"
-                            + " did you mean \"" + bestMatch + "\"?");
+                    showMessage("No such command \"" + com + "\" registered!" + suggestions);
                     return CommandResult.ERROR;
                 }
 
@@ -324,8 +491,16 @@ public class Console
             }
             else
             {
-                final BaseCommand command = stored.getCommandClass().newInstance();
-                result = command.runCommand(args, context);
+                final BaseCommand command = stored.getCommandInstance();
+                if (command instanceof ReadOnlyCommand
+                        && ((ReadOnlyCommand) command).isOutputCacheable(args, context))
+                {
+                    result = OutputCache.run((ReadOnlyCommand) command, com, args, context);
+                }
+                else
+                {
+                    result = command.runCommand(args, context);
+                }
             }
 
             if (result == CommandResult.BAD_SYNTAX
@@ -356,72 +531,88 @@ public class Console
             return;
         }
 
-        // Runcode and Alias ignore separators
-        // Hopefully the ONLY hardcoded command support I'll add to this mod...
-        String toLower = rawInput.toLowerCase();
-        if (toLower.startsWith("runcode") || toLower.startsWith("alias"))
-        {
-            runCommand(rawInput, context);
-        }
-        else
+        ConsoleLoader.ensureLoaded();
+        runInput(lexer, rawInput, context);
+        lastCommand = rawInput;
+    }
+
+    // Runs input that didn't come from the player directly, such as scheduled commands
+    // Uses its own lexer so scheduled commands never interfere with the player's input
+    static CommandResult runScheduledInput(String rawInput, CommandContext context)
+    {
+        return runInput(scheduledLexer, rawInput, context);
+    }
+
+    private static CommandResult runInput(InputLexer lexer, String rawInput, CommandContext context)
+    {
+        // Split the raw input up into the individual commands and their arguments
+        // The command separator is used to separate multiple commands (RunCode and Alias ignore it)
+        lexer.lex(rawInput, getSettings().getCommandSeparator());
+        // Input can be run from inside another command, which should get its own arguments back afterwards
+        final InputLexer.ArgumentList previousArgs = currentArgs.save();
+        CommandResult result = CommandResult.SUCCESS;
+        try
         {
-            // Split the raw input up into the individual commands
-            // The command separator is used to separate multiple commands
-            final String separator = Pattern.quote(getSettings().getCommandSeparator());
-            final Set<CommandResult> results = new HashSet<>();
-            final Map<String, String> aliases = CommandStore.getAliases();
-            for (String input : rawInput.split(separator))
+            for (int i = 0; i < lexer.getNumCommands(); i++)
             {
-                input = input.trim();
-                toLower = input.toLowerCase();
-                if (!input.isEmpty())
+                final String com = lexer.getCommand(i), args = lexer.getArgs(i);
+                final CommandResult tmp;
+
+                // Alias with arguments support
+                final AliasTemplate alias = CommandStore.retrieveAlias(com);
+                if (alias != null)
                 {
-                    // Regular commands
-                    if (!aliases.containsKey(toLower))
-                    {
-                        results.add(runCommand(input, context));
-                    }
-                    // Whole-line alias support
-                    else
-                    {
-                        final String comm = aliases.get(toLower);
-                        // Runcode always passes all arguments as one command
-                        if (comm.toLowerCase().startsWith("runcode "))
-                        {
-                            results.add(runCommand(comm, context));
-                        }
-                        // Regular alias, split into separate commands if needed
-                        else
-                        {
-                            for (String input2 : comm.replace(";",
-                                    getSettings().getCommandSeparator()).split(separator))
-                            {
-                                input2 = input2.trim();
-                                if (!input2.isEmpty())
-                                {
-                                    results.add(runCommand(input2, context));
-                                }
-                            }
-                        }
-                    }
+                    tmp = runAlias(alias, args, context);
+                }
+                else
+                {
+                    lexer.bindArgs(i, currentArgs);
+                    tmp = runCommand(lexer.getInput(i), com, args, context);
+                }
+
+                if (result == CommandResult.SUCCESS)
+                {
+                    result = tmp;
                 }
             }
         }
+        finally
+        {
+            currentArgs.restore(previousArgs);
+        }
 
-        lastCommand = rawInput;
+        return result;
     }
 
     private static void showOutput(ConsoleListener listener)
     {
-        if (output.length() > 0 && listener.showOutput(output.toString()))
+        final String toShow;
+        synchronized (outputLock)
         {
-            output = new StringBuilder();
+            if (output.length() == 0)
+            {
+                return;
+            }
+
+            toShow = output.toString();
+        }
+
+        // Messages added while the listener was busy are kept for next frame
+        if (listener.showOutput(toShow))
+        {
+            synchronized (outputLock)
+            {
+                output.delete(0, toShow.length());
+            }
         }
     }
 
     static void advance(ConsoleListener listener)
     {
+        ConsoleLoader.ensureLoaded();
         currentContext = listener.getContext();
+        CommandScheduler.advance(currentContext);
+        IncrementalCommand.advanceAll(currentContext);
         showOutput(listener);
     }
 
@@ -0,0 +1,376 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Logger;
+import org.jetbrains.annotations.Nullable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.lazywizard.console.CommandStore.StoredCommand;
+import org.lazywizard.console.commands.RunCode;
+import org.lazywizard.lazylib.JSONUtils.CommonDataJSONObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Loads everything the console needs: its settings and font, commands, aliases, command listeners, and RunCode's
+ * imports and macros.
+ * <p>
+ * Reading and parsing the data files doesn't depend on anything else, so it's done in parallel on a small thread pool
+ * while the rest of the game loads. Anything that loads classes or needs OpenGL (the console font, command listeners,
+ * RunCode's compiler) stays on the main thread, as does showing anything to the player: problems found in the
+ * background are collected and shown by {@link #finishLoading()}. Loading is finished the first time the console is
+ * used, waiting for the background work if it hasn't completed yet.
+ * <p>
+ * How long each part of loading took is written to the log.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public final class ConsoleLoader
+{
+    private static final Logger Log = Global.getLogger(ConsoleLoader.class);
+    private static final int MAX_THREADS = 4;
+    @Nullable private static volatile PendingLoad pending = null;
+
+    /**
+     * Starts loading the console in the background. Only the settings file and font are loaded before this returns;
+     * everything else is finished by {@link #finishLoading()}, or automatically the first time the console is used.
+     *
+     * @throws IOException   if the settings file couldn't be read.
+     * @throws JSONException if the settings file is malformed.
+     */
+    public static void startLoading() throws IOException, JSONException
+    {
+        // Never have two loads running at once
+        finishLoading();
+
+        final PendingLoad load = new PendingLoad();
+        final long startTime = System.nanoTime();
+        Console.applySettings(load.get(load.settings));
+        load.recordMainThreadPhase("font and settings", startTime);
+        pending = load;
+    }
+
+    /**
+     * Waits for any background loading to complete, then registers everything that was loaded. Does nothing if the
+     * console isn't currently loading.
+     *
+     * @throws IOException   if a required data file couldn't be read.
+     * @throws JSONException if a required data file is malformed.
+     */
+    public static void finishLoading() throws IOException, JSONException
+    {
+        final PendingLoad load = pending;
+        if (load == null)
+        {
+            return;
+        }
+
+        pending = null;
+        long startTime = System.nanoTime();
+        load.awaitReady();
+        load.recordMainThreadPhase("waiting for background tasks", startTime);
+        load.errors.show();
+
+        // Order matters: aliases and listeners are checked against the loaded commands
+        startTime = System.nanoTime();
+        CommandStore.setCommands(load.get(load.commands));
+        load.recordMainThreadPhase("command registry", startTime);
+
+        startTime = System.nanoTime();
+        CommonDataJSONObject aliases;
+        try
+        {
+            aliases = load.get(load.aliases);
+        }
+        catch (JSONException ex)
+        {
+            Console.showException("Failed to parse aliases", ex);
+            aliases = null;
+        }
+
+        CommandStore.setAliases(aliases);
+        load.recordMainThreadPhase("alias compilation", startTime);
+
+        startTime = System.nanoTime();
+        CommandStore.setListeners(load.get(load.listeners));
+        load.recordMainThreadPhase("listener classes", startTime);
+
+        startTime = System.nanoTime();
+        RunCode.setDefaultImports(load.get(load.imports));
+        Map<String, String> macros;
+        try
+        {
+            macros = load.get(load.macros);
+        }
+        catch (IOException | JSONException ex)
+        {
+            Console.showException("Failed to load RunCode macros: ", ex);
+            macros = Collections.emptyMap();
+        }
+
+        RunCode.setMacros(macros);
+        load.recordMainThreadPhase("RunCode compiler", startTime);
+
+        load.logSummary();
+    }
+
+    /**
+     * Loads the console, waiting until loading has completed.
+     *
+     * @throws IOException   if a required data file couldn't be read.
+     * @throws JSONException if a required data file is malformed.
+     */
+    public static void reload() throws IOException, JSONException
+    {
+        startLoading();
+        finishLoading();
+    }
+
+    // Called before the console is used; cheap once loading has finished
+    static void ensureLoaded()
+    {
+        if (pending == null)
+        {
+            return;
+        }
+
+        try
+        {
+            finishLoading();
+        }
+        catch (IOException | JSONException ex)
+        {
+            Console.showException("Failed to load the console!", ex);
+        }
+    }
+
+    /**
+     * Problems found while loading in the background. Nothing is shown to the player from a background thread, so
+     * these are kept until loading finishes on the main thread.
+     */
+    static final class LoadErrors
+    {
+        private final List<String> messages = new ArrayList<>();
+        private final List<Throwable> causes = new ArrayList<>();
+
+        synchronized void add(String message, Throwable cause)
+        {
+            messages.add(message);
+            causes.add(cause);
+        }
+
+        // Must be called from the main thread
+        synchronized void show()
+        {
+            for (int i = 0; i < messages.size(); i++)
+            {
+                Console.showException(messages.get(i), causes.get(i));
+            }
+
+            messages.clear();
+            causes.clear();
+        }
+    }
+
+    private static final class PendingLoad
+    {
+        private static final int NUM_BACKGROUND_PHASES = 6;
+        private long mainThreadTime = 0L;
+        // Counted down as each background phase completes, successfully or not
+        private final CountDownLatch ready = new CountDownLatch(NUM_BACKGROUND_PHASES);
+        private final List<String> phases = new ArrayList<>();
+        private final LoadErrors errors = new LoadErrors();
+        private final ExecutorService executor;
+        private final Future<JSONObject> settings;
+        private final Future<List<StoredCommand>> commands;
+        private final Future<CommonDataJSONObject> aliases;
+        private final Future<JSONArray> listeners;
+        private final Future<List<String>> imports;
+        private final Future<Map<String, String>> macros;
+
+        private PendingLoad()
+        {
+            // The background tasks only read files (Global.getSettings().loadJSON() and
+            // getMergedSpreadsheetDataForMod(), and LazyLib's JSONUtils.loadCommonJSON()) and parse what they read.
+            // The game doesn't document these as thread-safe; this assumes they only read data files and don't change
+            // any shared game state. If that turns out to be wrong, only those calls need to move back to the main
+            // thread. Nothing else from the game (UI, OpenGL, the script class loader) or Console.showMessage() is
+            // used here; errors from the background tasks are passed back through LoadErrors instead.
+            final int numThreads = Math.max(1, Math.min(MAX_THREADS, Runtime.getRuntime().availableProcessors()));
+            executor = Executors.newFixedThreadPool(numThreads, new ThreadFactory()
+            {
+                private int numCreated = 0;
+
+                @Override
+                public Thread newThread(Runnable task)
+                {
+                    final Thread thread = new Thread(task, "Console loader " + (++numCreated));
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+            settings = submit("settings file", new Callable<JSONObject>()
+            {
+                @Override
+                public JSONObject call() throws Exception
+                {
+                    return Console.loadSettings();
+                }
+            });
+            commands = submit("commands.csv", new Callable<List<StoredCommand>>()
+            {
+                @Override
+                public List<StoredCommand> call() throws Exception
+                {
+                    return CommandStore.parseCommands(errors);
+                }
+            });
+            aliases = submit("aliases", new Callable<CommonDataJSONObject>()
+            {
+                @Override
+                public CommonDataJSONObject call() throws Exception
+                {
+                    return CommandStore.loadAliases();
+                }
+            });
+            listeners = submit("command_listeners.csv", new Callable<JSONArray>()
+            {
+                @Override
+                public JSONArray call() throws Exception
+                {
+                    return CommandStore.loadListenerData();
+                }
+            });
+            imports = submit("RunCode imports", new Callable<List<String>>()
+            {
+                @Override
+                public List<String> call() throws Exception
+                {
+                    return RunCode.loadImports();
+                }
+            });
+            macros = submit("RunCode macros", new Callable<Map<String, String>>()
+            {
+                @Override
+                public Map<String, String> call() throws Exception
+                {
+                    return RunCode.loadMacros();
+                }
+            });
+            executor.shutdown();
+        }
+
+        private <T> Future<T> submit(final String phase, final Callable<T> task)
+        {
+            return executor.submit(new Callable<T>()
+            {
+                @Override
+                public T call() throws Exception
+                {
+                    final long startTime = System.nanoTime();
+                    try
+                    {
+                        return task.call();
+                    }
+                    finally
+                    {
+                        recordPhase(phase + " (background)", System.nanoTime() - startTime);
+                        ready.countDown();
+                    }
+                }
+            });
+        }
+
+        private void awaitReady()
+        {
+            boolean interrupted = false;
+            while (true)
+            {
+                try
+                {
+                    ready.await();
+                    break;
+                }
+                catch (InterruptedException ex)
+                {
+                    interrupted = true;
+                }
+            }
+
+            if (interrupted)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // Rethrows anything that went wrong in the background on the calling thread
+        private <T> T get(Future<T> future) throws IOException, JSONException
+        {
+            try
+            {
+                return future.get();
+            }
+            catch (InterruptedException ex)
+            {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(ex);
+            }
+            catch (ExecutionException ex)
+            {
+                final Throwable cause = ex.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof JSONException) throw (JSONException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                if (cause instanceof Error) throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
+        }
+
+        private void recordMainThreadPhase(String phase, long phaseStart)
+        {
+            final long elapsed = System.nanoTime() - phaseStart;
+            mainThreadTime += elapsed;
+            recordPhase(phase + " (main thread)", elapsed);
+        }
+
+        private void recordPhase(String phase, long elapsed)
+        {
+            final String entry = phase + ": " + CommandUtils.format(elapsed / 1_000_000f) + "ms";
+            synchronized (phases)
+            {
+                phases.add(entry);
+            }
+
+            Log.debug("Finished loading " + entry);
+        }
+
+        private void logSummary()
+        {
+            // Background phases overlap with each other and with the rest of the game loading
+            final StringBuilder summary = new StringBuilder("Console loaded, taking ")
+                    .append(CommandUtils.format(mainThreadTime / 1_000_000f))
+                    .append("ms of main thread time:");
+            synchronized (phases)
+            {
+                for (String phase : phases)
+                {
+                    summary.append("\n - ").append(phase);
+                }
+            }
+
+            Log.info(summary);
+        }
+    }
+
+    private ConsoleLoader()
+    {
+    }
+}
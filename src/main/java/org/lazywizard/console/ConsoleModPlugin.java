@@ -4,7 +4,6 @@ import com.fs.starfarer.api.BaseModPlugin;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.SettingsAPI;
 import org.apache.log4j.Level;
-import org.lazywizard.console.commands.ReloadConsole;
 
 import java.io.IOException;
 
@@ -64,8 +63,9 @@ public class ConsoleModPlugin extends BaseModPlugin
 
         migrateSettings();
 
-        // Load console settings - implementing it in ReloadConsole ensures the command will work identically
-        ReloadConsole.reloadConsole();
+        // Load console settings and font now, everything else is parsed in the background while the game loads
+        // Loading is finished by the first use of the console (see ConsoleLoader)
+        ConsoleLoader.startLoading();
 
         Console.showMessage("Console loaded, summon with " + Console.getSettings().getConsoleSummonKey() + ".", Level.DEBUG);
 
@@ -78,6 +78,15 @@ public class ConsoleModPlugin extends BaseModPlugin
     @Override
     public void onGameLoad(boolean newGame)
     {
+        ConsoleLoader.ensureLoaded();
+
+        // Scheduled commands shouldn't carry over between saves
+        CommandScheduler.cancelAll();
+        IncrementalCommand.discardAll();
+        SectorNameIndex.reset();
+        ArgumentType.clearCache();
+        CommandStore.incrementGeneration();
+        CommandScript.queueAutoexec();
         Global.getSector().getListenerManager().addListener(new ConsoleCampaignListener(), true);
     }
 }
@@ -0,0 +1,258 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Level;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A command that spreads its work over multiple frames instead of doing everything inside
+ * {@link #runCommand(String, CommandContext)}. Use this for commands that loop over every ship, weapon, market, etc in
+ * the sector, which can freeze the game for several seconds on large modlists.
+ * <p>
+ * When the command is entered, {@link #begin(String, CommandContext)} checks its arguments and gathers what needs to
+ * be done, then {@link #doWork(int)} is called once for each of the {@link #getTotalWork()} units of work. The console
+ * spends at most {@link ConsoleSettings#getCommandFrameBudget()} milliseconds per frame on this, showing the command's
+ * progress every so often. Once all work is done, or the command was cancelled with the Cancel command,
+ * {@link #finish(boolean)} is called to report the results.
+ * <p>
+ * Work that fits within a single frame's budget is done before {@link #runCommand(String, CommandContext)} returns, so
+ * on smaller modlists these commands behave exactly like regular ones. Only one incremental command runs at a time;
+ * others entered in the meantime wait their turn. A running command is cancelled if the player leaves the campaign or
+ * combat it was started in, and discarded without being finished when a save is loaded.
+ * <p>
+ * Incremental commands keep their progress in fields, so a new instance is created every time one is run regardless of
+ * its 'stateless' column in commands.csv.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public abstract class IncrementalCommand implements BaseCommand
+{
+    private static final Logger Log = Global.getLogger(IncrementalCommand.class);
+    private static final long PROGRESS_INTERVAL = 1_000_000_000L; // Show progress at most once per second
+    private static final Deque<IncrementalCommand> running = new ArrayDeque<>();
+    private boolean startedInCampaign;
+    private int totalWork, workDone;
+    private long startTime, lastProgress;
+
+    //<editor-fold defaultstate="collapsed" desc="Console-side handling">
+
+    /**
+     * Cancels every running or waiting incremental command. Each cancelled command still reports the work it
+     * completed before it was stopped.
+     *
+     * @return How many commands were cancelled.
+     */
+    public static int cancelAll()
+    {
+        final List<IncrementalCommand> toCancel = new ArrayList<>(running);
+        running.clear();
+        for (IncrementalCommand command : toCancel)
+        {
+            command.end(true);
+        }
+
+        return toCancel.size();
+    }
+
+    /**
+     * Returns all incremental commands that haven't finished yet. The first is the one currently running, the rest
+     * are waiting for it to finish.
+     *
+     * @return A {@link List} of all unfinished incremental commands.
+     */
+    public static List<IncrementalCommand> getRunning()
+    {
+        return new ArrayList<>(running);
+    }
+
+    // Called by the console overlay every frame, so avoids the copy getRunning() makes
+    static boolean isAnyRunning()
+    {
+        return !running.isEmpty();
+    }
+
+    // Called by ConsoleModPlugin; whatever the commands were working on belongs to the previous save
+    static void discardAll()
+    {
+        running.clear();
+    }
+
+    // Called by Console.advance() every frame
+    static void advanceAll(CommandContext context)
+    {
+        if (running.isEmpty())
+        {
+            return;
+        }
+
+        final long deadline = System.nanoTime() + Console.getSettings().getCommandFrameBudget() * 1_000_000L;
+        while (!running.isEmpty())
+        {
+            final IncrementalCommand command = running.peekFirst();
+            if (command.startedInCampaign != context.isInCampaign())
+            {
+                running.removeFirst();
+                Console.showMessage(command.getName() + " was cancelled as the game left the "
+                        + (command.startedInCampaign ? "campaign" : "battle") + " it was started in.", Level.WARN);
+                command.end(true);
+                continue;
+            }
+
+            if (!command.advance(deadline))
+            {
+                return;
+            }
+
+            running.removeFirst();
+            command.end(false);
+        }
+    }
+
+    // Returns true once the command has no work left
+    private boolean advance(long deadline)
+    {
+        // At least one unit of work is always done, so commands finish even if the budget is tiny
+        do
+        {
+            if (workDone >= totalWork)
+            {
+                return true;
+            }
+
+            try
+            {
+                doWork(workDone++);
+            }
+            catch (Exception ex)
+            {
+                Console.showException("Failed to run " + getName() + ", stopping: ", ex);
+                workDone = totalWork;
+                return true;
+            }
+        }
+        while (System.nanoTime() < deadline);
+
+        if (workDone >= totalWork)
+        {
+            return true;
+        }
+
+        final long now = System.nanoTime();
+        if (now - lastProgress >= PROGRESS_INTERVAL)
+        {
+            lastProgress = now;
+            Console.showMessage(getName() + ": " + (workDone * 100L / totalWork) + "% done ("
+                    + workDone + "/" + totalWork + ").");
+        }
+
+        return false;
+    }
+
+    private void end(boolean wasCancelled)
+    {
+        if (wasCancelled)
+        {
+            Console.showMessage(getName() + " was cancelled after " + workDone + " of " + totalWork
+                    + " steps.", Level.WARN);
+        }
+
+        Log.debug(getName() + " finished " + workDone + " of " + totalWork + " steps in "
+                + CommandUtils.format((System.nanoTime() - startTime) / 1_000_000f) + "ms");
+        try
+        {
+            finish(wasCancelled);
+        }
+        catch (Exception ex)
+        {
+            Console.showException("Failed to finish " + getName() + ": ", ex);
+        }
+    }
+    //</editor-fold>
+
+    /**
+     * Checks the command's arguments and gathers the work that needs to be done. No heavy work should be done here.
+     *
+     * @param args    The arguments passed into this command. Will be an empty {@link String} if no arguments were
+     *                entered.
+     * @param context Where this command was called from (campaign, combat, mission, simulation, etc).
+     *
+     * @return {@link CommandResult#SUCCESS} to start working, or any other result to stop here without calling
+     *         {@link #doWork(int)} or {@link #finish(boolean)}.
+     */
+    protected abstract CommandResult begin(String args, CommandContext context);
+
+    /**
+     * Called once after {@link #begin(String, CommandContext)} succeeds.
+     *
+     * @return How many units of work this command needs to do, or 0 to skip straight to {@link #finish(boolean)}.
+     */
+    protected abstract int getTotalWork();
+
+    /**
+     * Does a single unit of work. Each unit should be small, as the frame budget is only checked between units.
+     * Throwing an exception stops the command.
+     *
+     * @param unit Which unit of work to do, counting up from 0 to {@link #getTotalWork()} - 1.
+     */
+    protected abstract void doWork(int unit);
+
+    /**
+     * Called once the command is finished, to show its results.
+     *
+     * @param wasCancelled {@code true} if the command was cancelled before all of its work was done.
+     */
+    protected abstract void finish(boolean wasCancelled);
+
+    /**
+     * @return The name shown in this command's progress messages.
+     */
+    public String getName()
+    {
+        return getClass().getSimpleName();
+    }
+
+    /**
+     * @return How much of this command's work has been done, from 0 to 1.
+     */
+    public float getProgress()
+    {
+        return (totalWork == 0 ? 1f : workDone / (float) totalWork);
+    }
+
+    @Override
+    public final CommandResult runCommand(String args, CommandContext context)
+    {
+        final CommandResult result = begin(args, context);
+        if (result != CommandResult.SUCCESS)
+        {
+            return result;
+        }
+
+        startedInCampaign = context.isInCampaign();
+        totalWork = Math.max(0, getTotalWork());
+        workDone = 0;
+        startTime = lastProgress = System.nanoTime();
+        running.addLast(this);
+        if (running.peekFirst() != this)
+        {
+            Console.showMessage(getName() + " will start once " + running.peekFirst().getName() + " has finished.");
+            return CommandResult.SUCCESS;
+        }
+
+        // Small jobs finish here, so they behave like any other command
+        advanceAll(context);
+        if (running.peekFirst() == this)
+        {
+            Console.showMessage(getName() + " is working on " + totalWork + " steps in the background."
+                    + " Enter 'cancel' to stop it.");
+        }
+
+        return CommandResult.SUCCESS;
+    }
+}
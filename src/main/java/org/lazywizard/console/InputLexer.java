@@ -0,0 +1,303 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * Splits player input into commands and arguments in a single pass. Buffers are kept between calls, so one lexer
+ * should be reused for every line of input.
+ * <p>
+ * Rules:
+ * <ul>
+ * <li>Commands are separated by the command separator. Separators inside quotes or escaped with a backslash are
+ * treated as part of the argument instead.</li>
+ * <li>Arguments are separated by spaces, tabs or newlines. Text inside double quotes is a single argument.</li>
+ * <li>A backslash escapes the next character.</li>
+ * <li>RunCode and Alias receive the rest of the input exactly as entered (minus surrounding whitespace), as their
+ * arguments are code or other commands.</li>
+ * </ul>
+ * Each command's arguments are available both as a single {@link String} and as individual tokens. Quotes and
+ * escapes are only applied to the tokens. The {@link String} keeps quotes and backslashes in place, and has newlines
+ * replaced by spaces, matching what commands received before. RunCode and Alias are the exception, and keep their
+ * newlines so that code containing {@code //} comments still works.
+ */
+final class InputLexer
+{
+    private String[] tokens = new String[32];
+    private int[] tokenStart = new int[8], tokenEnd = new int[8];
+    private String[] commands = new String[8], args = new String[8], inputs = new String[8];
+    private int numTokens = 0, numCommands = 0;
+    private final StringBuilder token = new StringBuilder(), rawArgs = new StringBuilder();
+
+    private static boolean isWhitespace(char ch)
+    {
+        return (ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r');
+    }
+
+    // Commands whose arguments should never be split up or have separators removed
+    private static boolean isVerbatim(String command)
+    {
+        return ("runcode".equals(command) || "alias".equals(command));
+    }
+
+    /**
+     * Splits a line of input into its individual commands.
+     *
+     * @param input     The raw input entered by the player.
+     * @param separator The command separator.
+     */
+    void lex(String input, String separator)
+    {
+        numTokens = 0;
+        numCommands = 0;
+
+        final int length = input.length();
+        int index = 0;
+        while (index < length)
+        {
+            // Skip whitespace and empty commands
+            final char ch = input.charAt(index);
+            if (isWhitespace(ch))
+            {
+                index++;
+                continue;
+            }
+            if (input.startsWith(separator, index))
+            {
+                index += separator.length();
+                continue;
+            }
+
+            // Command name
+            final int commandStart = index;
+            while (index < length && !isWhitespace(input.charAt(index)) && !input.startsWith(separator, index))
+            {
+                index++;
+            }
+
+            final String command = input.substring(commandStart, index).toLowerCase();
+            final int firstToken = numTokens, end;
+            if (isVerbatim(command))
+            {
+                end = tokenize(input, index, length, null, true);
+            }
+            else
+            {
+                end = tokenize(input, index, length, separator, false);
+            }
+
+            addCommand(command, rawArgs.toString().trim(), input.substring(commandStart, end).trim(), firstToken);
+
+            index = end;
+        }
+    }
+
+    /**
+     * Splits a single command's arguments into tokens. Used for arguments that didn't come from the player directly,
+     * such as expanded aliases.
+     *
+     * @param command The command these arguments belong to.
+     * @param args    The arguments to split.
+     */
+    void lexArgs(String command, String args)
+    {
+        numTokens = 0;
+        numCommands = 0;
+        tokenize(args, 0, args.length(), null, false);
+        addCommand(command, args, args, 0);
+    }
+
+    // Reads tokens until the end of the input or the next unquoted separator, returning where it stopped
+    // Verbatim input is still split into tokens on whitespace, but quotes, escapes and separators aren't special,
+    // and its args String is copied exactly as entered
+    private int tokenize(String input, int index, int end, @Nullable String separator, boolean verbatim)
+    {
+        rawArgs.setLength(0);
+        token.setLength(0);
+        boolean inQuotes = false, hasToken = false;
+        while (index < end)
+        {
+            final char ch = input.charAt(index);
+            if (!verbatim)
+            {
+                if (ch == '\\' && index + 1 < end)
+                {
+                    // The escape is only removed from the token; commands reading their args String see it as typed
+                    final char escaped = input.charAt(index + 1);
+                    token.append(escaped);
+                    rawArgs.append(ch).append(escaped == '\n' || escaped == '\r' ? ' ' : escaped);
+                    hasToken = true;
+                    index += 2;
+                    continue;
+                }
+                if (ch == '"')
+                {
+                    inQuotes = !inQuotes;
+                    rawArgs.append(ch);
+                    hasToken = true;
+                    index++;
+                    continue;
+                }
+                if (!inQuotes && separator != null && input.startsWith(separator, index))
+                {
+                    break;
+                }
+            }
+
+            if (isWhitespace(ch) && !inQuotes)
+            {
+                if (hasToken)
+                {
+                    addToken(token.toString());
+                    token.setLength(0);
+                    hasToken = false;
+                }
+
+                rawArgs.append(verbatim ? ch : ' ');
+            }
+            else
+            {
+                token.append(ch);
+                rawArgs.append(!verbatim && (ch == '\n' || ch == '\r') ? ' ' : ch);
+                hasToken = true;
+            }
+
+            index++;
+        }
+
+        if (hasToken)
+        {
+            addToken(token.toString());
+        }
+
+        return index;
+    }
+
+    private void addToken(String toAdd)
+    {
+        if (numTokens == tokens.length)
+        {
+            tokens = Arrays.copyOf(tokens, tokens.length * 2);
+        }
+
+        tokens[numTokens++] = toAdd;
+    }
+
+    private void addCommand(String command, String commandArgs, String input, int firstToken)
+    {
+        if (numCommands == commands.length)
+        {
+            final int newLength = commands.length * 2;
+            commands = Arrays.copyOf(commands, newLength);
+            args = Arrays.copyOf(args, newLength);
+            inputs = Arrays.copyOf(inputs, newLength);
+            tokenStart = Arrays.copyOf(tokenStart, newLength);
+            tokenEnd = Arrays.copyOf(tokenEnd, newLength);
+        }
+
+        commands[numCommands] = command;
+        args[numCommands] = commandArgs;
+        inputs[numCommands] = input;
+        tokenStart[numCommands] = firstToken;
+        tokenEnd[numCommands] = numTokens;
+        numCommands++;
+    }
+
+    int getNumCommands()
+    {
+        return numCommands;
+    }
+
+    /**
+     * @return The lowercase name of the command at {@code index}.
+     */
+    String getCommand(int index)
+    {
+        return commands[index];
+    }
+
+    /**
+     * @return The arguments of the command at {@code index}, as a single {@link String}.
+     */
+    String getArgs(int index)
+    {
+        return args[index];
+    }
+
+    /**
+     * @return The command at {@code index} as the player entered it.
+     */
+    String getInput(int index)
+    {
+        return inputs[index];
+    }
+
+    /**
+     * @return A copy of the arguments of the command at {@code index}, split into tokens.
+     */
+    String[] getTokens(int index)
+    {
+        return Arrays.copyOfRange(tokens, tokenStart[index], tokenEnd[index]);
+    }
+
+    /**
+     * Points {@code list} at the arguments of the command at {@code index}. The list is only valid until this lexer
+     * is used again.
+     */
+    void bindArgs(int index, ArgumentList list)
+    {
+        list.bind(tokens, tokenStart[index], tokenEnd[index]);
+    }
+
+    /**
+     * A read-only view of a single command's arguments. The same instance is reused for every command.
+     */
+    static final class ArgumentList extends AbstractList<String>
+    {
+        private static final String[] NO_TOKENS = new String[0];
+        private String[] tokens = NO_TOKENS;
+        private int start = 0, size = 0;
+
+        void bind(String[] tokens, int start, int end)
+        {
+            this.tokens = tokens;
+            this.start = start;
+            this.size = end - start;
+        }
+
+        /**
+         * @return A copy of this list's current binding, for {@link #restore(ArgumentList)} to put back once a nested
+         *         command has finished with this list.
+         */
+        ArgumentList save()
+        {
+            final ArgumentList saved = new ArgumentList();
+            saved.bind(tokens, start, start + size);
+            return saved;
+        }
+
+        void restore(ArgumentList saved)
+        {
+            bind(saved.tokens, saved.start, saved.start + saved.size);
+        }
+
+        @Override
+        public String get(int index)
+        {
+            if (index < 0 || index >= size)
+            {
+                throw new IndexOutOfBoundsException("Index: " + index + ", size: " + size);
+            }
+
+            return tokens[start + index];
+        }
+
+        @Override
+        public int size()
+        {
+            return size;
+        }
+    }
+}
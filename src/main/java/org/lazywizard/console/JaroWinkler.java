@@ -0,0 +1,219 @@
+package org.lazywizard.console;
+
+/**
+ * The Jaro-Winkler similarity used for all of the console's typo correction, working on lowercase {@code char}
+ * arrays so that scoring a candidate never allocates.
+ * <p>
+ * Candidates are usually compared against a minimum score (the typo correction threshold, or the best score found so
+ * far). The number of characters two strings can have in common is limited by the shorter one's length, which puts an
+ * upper limit on their score before any characters are compared; candidates whose limit can't beat the minimum are
+ * skipped without being scored.
+ * <p>
+ * Lowercasing is done per character, so results don't depend on the player's locale.
+ */
+// Taken from: https://github.com/larsga/Duke/blob/master/duke-core/src/main/java/no/priv/garshol/duke/comparators/JaroWinkler.java
+final class JaroWinkler
+{
+    static char[] toLowerCase(String str)
+    {
+        final char[] lowercase = new char[str.length()];
+        toLowerCase(str, lowercase);
+        return lowercase;
+    }
+
+    /**
+     * Copies the lowercase characters of {@code str} into {@code dest}, which must be at least as long as
+     * {@code str}.
+     *
+     * @return How many characters were copied.
+     */
+    static int toLowerCase(String str, char[] dest)
+    {
+        final int length = str.length();
+        str.getChars(0, length, dest, 0);
+        for (int i = 0; i < length; i++)
+        {
+            dest[i] = Character.toLowerCase(dest[i]);
+        }
+
+        return length;
+    }
+
+    /**
+     * Returns normalized score, with 0.0 meaning no similarity at all,
+     * and 1.0 meaning full equality.
+     */
+    static double similarity(char[] s1, int len1, char[] s2, int len2)
+    {
+        if (len1 == len2 && regionEquals(s1, s2, len1))
+        {
+            return 1.0;
+        }
+
+        // ensure that s1 is shorter than or same length as s2
+        if (len1 > len2)
+        {
+            final char[] tmp = s2;
+            s2 = s1;
+            s1 = tmp;
+            final int tmpLen = len2;
+            len2 = len1;
+            len1 = tmpLen;
+        }
+
+        // (1) find the number of characters the two strings have in common.
+        // note that matching characters can only be half the length of the
+        // longer string apart.
+        final int maxdist = len2 / 2;
+        int c = 0; // count of common characters
+        int t = 0; // count of transpositions
+        int prevpos = -1;
+        for (int ix = 0; ix < len1; ix++)
+        {
+            final char ch = s1[ix];
+
+            // now try to find it in s2
+            for (int ix2 = Math.max(0, ix - maxdist), end = Math.min(len2, ix + maxdist); ix2 < end; ix2++)
+            {
+                if (ch == s2[ix2])
+                {
+                    c++; // we found a common character
+                    if (prevpos != -1 && ix2 < prevpos)
+                    {
+                        t++; // moved back before earlier
+                    }
+                    prevpos = ix2;
+                    break;
+                }
+            }
+        }
+
+        // we don't divide t by 2 because as far as we can tell, the above
+        // code counts transpositions directly.
+        // we might have to give up right here
+        if (c == 0)
+        {
+            return 0.0;
+        }
+
+        return adjust(((c / (double) len1) + (c / (double) len2) + ((c - t) / (double) c)) / 3.0,
+                c, prefixLength(s1, s2, len1), len1, len2);
+    }
+
+    /**
+     * Scores two strings, unless their lengths show they can't score higher than {@code minScore}.
+     *
+     * @return The same score {@link #similarity(char[], int, char[], int)} would return, or 0.0 if that score
+     *         couldn't have been higher than {@code minScore} (or a perfect match).
+     */
+    static double similarity(char[] s1, int len1, char[] s2, int len2, double minScore)
+    {
+        final double limit = (len1 <= len2 ? maxSimilarity(s1, len1, s2, len2, len1)
+                : maxSimilarity(s2, len2, s1, len1, len2));
+        if (limit < 1.0 && limit <= minScore)
+        {
+            return 0.0;
+        }
+
+        return similarity(s1, len1, s2, len2);
+    }
+
+    /**
+     * Returns the highest score {@link #similarity(char[], int, char[], int)} could give two strings if they have at
+     * most {@code maxCommon} characters in common, by following the same calculation with no transpositions. Every
+     * step of the real calculation only ever increases with the number of common characters, so the real score can
+     * never be higher.
+     *
+     * @param s1 The shorter of the two strings.
+     * @param s2 The longer of the two strings.
+     */
+    static double maxSimilarity(char[] s1, int len1, char[] s2, int len2, int maxCommon)
+    {
+        final int c = Math.min(maxCommon, len1);
+        if (c == 0)
+        {
+            return (len1 == 0 && len2 == 0 ? 1.0 : 0.0);
+        }
+
+        return adjust(((c / (double) len1) + (c / (double) len2) + 1.0) / 3.0,
+                c, prefixLength(s1, s2, len1), len1, len2);
+    }
+
+    // Steps (2) and (3) of the calculation, shared with maxSimilarity() so the two always agree
+    private static double adjust(double score, int c, int p, int len1, int len2)
+    {
+        // (2) common prefix modification
+        score += ((p * (1 - score)) / 10);
+
+        // (3) longer string adjustment
+        // I'm confused about this part. Winkler's original source code includes
+        // it, and Yancey's 2005 paper describes it. However, Winkler's list of
+        // test cases in his 2006 paper does not include this modification. So
+        // is this part of Jaro-Winkler, or is it not? Hard to say.
+        if (len1 >= 5 // both strings at least 5 characters long
+                && c - p >= 2 // at least two common characters besides prefix
+                && c - p >= ((len1 - p) / 2)) // fairly rich in common chars
+        {
+            score = score + ((1 - score) * ((c - (p + 1))
+                    / ((double) ((len1 + len2) - (2 * (p - 1))))));
+        }
+
+        return score;
+    }
+
+    private static int prefixLength(char[] s1, char[] s2, int len1)
+    {
+        int p = 0; // length of prefix
+        final int last = Math.min(4, len1);
+        while (p < last && s1[p] == s2[p])
+        {
+            p++;
+        }
+
+        return p;
+    }
+
+    private static boolean regionEquals(char[] s1, char[] s2, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (s1[i] != s2[i])
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * A lowercase query and a reusable buffer for lowercasing candidates, for searching things other than plain
+     * collections of ids (factions, markets, etc). Only the query itself is allocated; candidates are lowercased into
+     * the buffer, which only grows when a candidate is longer than any before it.
+     */
+    static final class Query
+    {
+        private final char[] query;
+        private char[] buffer = new char[32];
+
+        Query(String query)
+        {
+            this.query = toLowerCase(query);
+        }
+
+        double score(String candidate, double minScore)
+        {
+            if (candidate.length() > buffer.length)
+            {
+                buffer = new char[Math.max(candidate.length(), buffer.length * 2)];
+            }
+
+            final int length = toLowerCase(candidate, buffer);
+            return similarity(query, query.length, buffer, length, minScore);
+        }
+    }
+
+    private JaroWinkler()
+    {
+    }
+}
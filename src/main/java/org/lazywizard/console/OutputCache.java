@@ -0,0 +1,83 @@
+package org.lazywizard.console;
+
+import org.lazywizard.console.BaseCommand.CommandContext;
+import org.lazywizard.console.BaseCommand.CommandResult;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Remembers what {@link ReadOnlyCommand}s showed, keyed by command, arguments and context. Each entry is stamped with
+ * {@link CommandStore#getGeneration()} and ignored once the generation changes, so nothing needs to be cleared when
+ * commands, aliases, settings or the loaded save change.
+ */
+final class OutputCache
+{
+    private static final int MAX_ENTRIES = 64;
+    // Access-ordered, so the least recently used entry is dropped first
+    private static final Map<String, Entry> entries = new LinkedHashMap<String, Entry>(MAX_ENTRIES, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+        {
+            return size() > MAX_ENTRIES;
+        }
+    };
+
+    private OutputCache()
+    {
+    }
+
+    // Only called from the main thread
+    static CommandResult run(ReadOnlyCommand command, String name, String args, CommandContext context)
+    {
+        final String key = name.toLowerCase() + '\0' + args + '\0' + context.name();
+        final int generation = CommandStore.getGeneration();
+        final Entry cached = entries.get(key);
+        if (cached != null && cached.generation == generation)
+        {
+            if (!cached.output.isEmpty())
+            {
+                Console.showMessage(cached.output);
+            }
+
+            return CommandResult.SUCCESS;
+        }
+
+        // Read-only commands shouldn't run other commands, but don't cache anything if they do
+        if (!Console.beginCapture())
+        {
+            return command.runCommand(args, context);
+        }
+
+        final CommandResult result;
+        final String output;
+        try
+        {
+            result = command.runCommand(args, context);
+        }
+        finally
+        {
+            output = Console.endCapture();
+        }
+
+        if (result == CommandResult.SUCCESS && generation == CommandStore.getGeneration())
+        {
+            entries.put(key, new Entry(generation, output));
+        }
+
+        return result;
+    }
+
+    private static final class Entry
+    {
+        private final int generation;
+        private final String output;
+
+        private Entry(int generation, String output)
+        {
+            this.generation = generation;
+            this.output = output;
+        }
+    }
+}
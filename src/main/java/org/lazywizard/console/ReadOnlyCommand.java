@@ -0,0 +1,29 @@
+package org.lazywizard.console;
+
+/**
+ * A command that only displays information and never changes anything, such as Help or Status. The console remembers
+ * the output of these commands, and entering the same command with the same arguments in the same context again shows
+ * the remembered output instead of running the command.
+ * <p>
+ * Remembered output is thrown away whenever commands or aliases are reloaded, a setting is changed, or a save is
+ * loaded, so only implement this for commands whose output depends on nothing else. Output is only remembered when the
+ * command returns {@link CommandResult#SUCCESS}.
+ *
+ * @author LazyWizard
+ * @since 3.0
+ */
+public interface ReadOnlyCommand extends BaseCommand
+{
+    /**
+     * Called before the command is run to check whether its output can be remembered.
+     *
+     * @param args    The arguments passed into the command.
+     * @param context The current console {@link CommandContext}.
+     *
+     * @return {@code true} if running this command with these arguments always shows the same output until the next
+     *         reload, settings change or save load, {@code false} if it should always be run.
+     *
+     * @since 3.0
+     */
+    boolean isOutputCacheable(String args, CommandContext context);
+}
@@ -0,0 +1,485 @@
+package org.lazywizard.console;
+
+import com.fs.starfarer.api.Global;
+import com.fs.starfarer.api.campaign.FactionAPI;
+import com.fs.starfarer.api.campaign.LocationAPI;
+import com.fs.starfarer.api.campaign.SectorEntityToken;
+import com.fs.starfarer.api.campaign.StarSystemAPI;
+import com.fs.starfarer.api.campaign.econ.MarketAPI;
+import com.fs.starfarer.api.util.Pair;
+import org.jetbrains.annotations.Nullable;
+import org.lazywizard.console.commands.List_;
+
+import java.util.*;
+
+/**
+ * Looks up factions, markets, star systems, locations, market conditions and the notable tokens in each location by id
+ * or name. Used by the findBest*Match methods in {@link CommandUtils}, and through them by commands such as GoTo, Jump,
+ * SetRelation and AddCondition.
+ * <p>
+ * Each kind of entity is indexed the first time it's searched for after a save is loaded, keyed by both lowercase id
+ * and lowercase name, so exact matches are found without looking at any other entity. An exact match is checked
+ * against the game before it's returned, and a search that doesn't find one compares the index against the game's
+ * current entities first, so markets, locations and tokens added, removed or renamed since are picked up. Only the
+ * kind of entity (or the single location) that changed is rebuilt.
+ * <p>
+ * Typo correction searches ids first, then names, just like the unindexed methods it replaced. The only difference is
+ * that an exact name match is now preferred over an id that is merely similar.
+ */
+final class SectorNameIndex
+{
+    // The tokens CommandUtils.findTokenInLocation() searches
+    private static final Map<LocationAPI, TokenKind> tokensByLocation = new IdentityHashMap<>();
+    private static final Kind<FactionAPI> factions = new Kind<FactionAPI>()
+    {
+        @Override
+        protected Collection<FactionAPI> load()
+        {
+            return Global.getSector().getAllFactions();
+        }
+
+        @Override
+        protected String getId(FactionAPI faction)
+        {
+            return faction.getId();
+        }
+
+        @Override
+        protected String getName(FactionAPI faction)
+        {
+            return faction.getDisplayName();
+        }
+
+        @Override
+        protected boolean isAlive(FactionAPI faction)
+        {
+            return Global.getSector().getFaction(faction.getId()) == faction;
+        }
+    };
+    private static final Kind<MarketAPI> markets = new Kind<MarketAPI>()
+    {
+        @Override
+        protected Collection<MarketAPI> load()
+        {
+            return Global.getSector().getEconomy().getMarketsCopy();
+        }
+
+        @Override
+        protected String getId(MarketAPI market)
+        {
+            return market.getId();
+        }
+
+        @Override
+        protected String getName(MarketAPI market)
+        {
+            return market.getName();
+        }
+
+        @Override
+        protected boolean isAlive(MarketAPI market)
+        {
+            return Global.getSector().getEconomy().getMarket(market.getId()) == market;
+        }
+    };
+    private static final Kind<StarSystemAPI> systems = new Kind<StarSystemAPI>()
+    {
+        @Override
+        protected Collection<StarSystemAPI> load()
+        {
+            return Global.getSector().getStarSystems();
+        }
+
+        @Override
+        protected String getId(StarSystemAPI system)
+        {
+            return system.getId();
+        }
+
+        @Override
+        protected String getName(StarSystemAPI system)
+        {
+            return system.getBaseName();
+        }
+
+        @Override
+        protected boolean isAlive(StarSystemAPI system)
+        {
+            return Global.getSector().getStarSystems().contains(system);
+        }
+    };
+    private static final Kind<LocationAPI> locations = new Kind<LocationAPI>()
+    {
+        @Override
+        protected Collection<LocationAPI> load()
+        {
+            return Global.getSector().getAllLocations();
+        }
+
+        @Override
+        protected String getId(LocationAPI location)
+        {
+            return location.getId();
+        }
+
+        @Override
+        protected String getName(LocationAPI location)
+        {
+            return location.getName();
+        }
+
+        @Override
+        protected boolean isAlive(LocationAPI location)
+        {
+            return (location.isHyperspace() ? location == Global.getSector().getHyperspace()
+                    : Global.getSector().getStarSystems().contains(location));
+        }
+    };
+    private static final Kind<Pair<String, String>> conditions = new Kind<Pair<String, String>>()
+    {
+        @Override
+        protected Collection<Pair<String, String>> load()
+        {
+            return List_.getMarketConditionIdsWithNames();
+        }
+
+        @Override
+        protected String getId(Pair<String, String> condition)
+        {
+            return condition.one;
+        }
+
+        @Override
+        protected String getName(Pair<String, String> condition)
+        {
+            return condition.two;
+        }
+    };
+
+    // Called by ConsoleModPlugin; everything indexed belongs to the previous save
+    static void reset()
+    {
+        tokensByLocation.clear();
+        factions.clear();
+        markets.clear();
+        systems.clear();
+        locations.clear();
+        conditions.clear();
+    }
+
+    @Nullable
+    static FactionAPI findFaction(String name)
+    {
+        return factions.find(name);
+    }
+
+    @Nullable
+    static MarketAPI findMarket(String name)
+    {
+        return markets.find(name);
+    }
+
+    @Nullable
+    static StarSystemAPI findSystem(String name)
+    {
+        return systems.find(name);
+    }
+
+    @Nullable
+    static LocationAPI findLocation(String name)
+    {
+        return locations.find(name);
+    }
+
+    /**
+     * @return The id of the best matching market condition, or {@code null} if none were close enough.
+     */
+    @Nullable
+    static String findMarketCondition(String name)
+    {
+        final Pair<String, String> condition = conditions.find(name);
+        return (condition == null ? null : condition.one);
+    }
+
+    @Nullable
+    static SectorEntityToken findToken(String name, LocationAPI location, String... tags)
+    {
+        TokenKind tokens = tokensByLocation.get(location);
+        if (tokens == null || !Arrays.equals(tokens.tags, tags))
+        {
+            tokens = new TokenKind(location, tags);
+            tokensByLocation.put(location, tokens);
+        }
+
+        return tokens.find(name);
+    }
+
+    private static String toLowerCase(String str)
+    {
+        return new String(JaroWinkler.toLowerCase(str));
+    }
+
+    private static final class TokenKind extends Kind<SectorEntityToken>
+    {
+        private final LocationAPI location;
+        private final String[] tags;
+
+        private TokenKind(LocationAPI location, String[] tags)
+        {
+            this.location = location;
+            this.tags = tags;
+        }
+
+        @Override
+        protected Collection<SectorEntityToken> load()
+        {
+            // Tokens can have more than one of the tags
+            final Set<SectorEntityToken> tokens = new LinkedHashSet<>();
+            for (String tag : tags)
+            {
+                tokens.addAll(location.getEntitiesWithTag(tag));
+            }
+
+            return tokens;
+        }
+
+        @Override
+        protected String getId(SectorEntityToken token)
+        {
+            return token.getId();
+        }
+
+        @Override
+        protected String getName(SectorEntityToken token)
+        {
+            return token.getName();
+        }
+
+        @Override
+        protected String getAltName(SectorEntityToken token)
+        {
+            return token.getFullName();
+        }
+
+        @Override
+        protected boolean isAlive(SectorEntityToken token)
+        {
+            return token.getContainingLocation() == location;
+        }
+    }
+
+    /**
+     * The index of a single kind of entity.
+     */
+    private abstract static class Kind<T>
+    {
+        private final List<T> entities = new ArrayList<>();
+        private final List<String> ids = new ArrayList<>(), names = new ArrayList<>(), altNames = new ArrayList<>();
+        private final Map<String, T> byId = new HashMap<>(), byName = new HashMap<>();
+        // Only built if a typo needs correcting
+        @Nullable private StringMatchIndex idIndex, nameIndex, altNameIndex;
+        private boolean isLoaded = false;
+
+        /**
+         * @return Every entity of this kind that currently exists, in a consistent order.
+         */
+        protected abstract Collection<? extends T> load();
+
+        protected abstract String getId(T entity);
+
+        protected abstract String getName(T entity);
+
+        /**
+         * @return A second name the entity can be found by, or {@code null} if it doesn't have one.
+         */
+        @Nullable
+        protected String getAltName(T entity)
+        {
+            return null;
+        }
+
+        /**
+         * @return Whether the entity still exists in the game. Must be cheap, as it's called for every exact match.
+         */
+        protected boolean isAlive(T entity)
+        {
+            return true;
+        }
+
+        private void clear()
+        {
+            entities.clear();
+            ids.clear();
+            names.clear();
+            altNames.clear();
+            byId.clear();
+            byName.clear();
+            idIndex = nameIndex = altNameIndex = null;
+            isLoaded = false;
+        }
+
+        private void rebuild(Collection<? extends T> current)
+        {
+            clear();
+            for (T entity : current)
+            {
+                final String id = nullToEmpty(getId(entity)), name = nullToEmpty(getName(entity)),
+                        altName = getAltName(entity);
+                entities.add(entity);
+                ids.add(id);
+                names.add(name);
+                altNames.add(altName);
+
+                // When several entities share an id or name, the first one wins
+                putIfAbsent(byId, toLowerCase(id), entity);
+                putIfAbsent(byName, toLowerCase(name), entity);
+                if (altName != null)
+                {
+                    putIfAbsent(byName, toLowerCase(altName), entity);
+                }
+            }
+
+            isLoaded = true;
+        }
+
+        private static String nullToEmpty(@Nullable String str)
+        {
+            return (str == null ? "" : str);
+        }
+
+        private static <T> void putIfAbsent(Map<String, T> map, String key, T entity)
+        {
+            if (!map.containsKey(key))
+            {
+                map.put(key, entity);
+            }
+        }
+
+        // Rebuilds this index if anything was added, removed, reordered or renamed since it was built
+        private boolean refresh()
+        {
+            final Collection<? extends T> current = load();
+            if (isLoaded && current.size() == entities.size())
+            {
+                boolean isCurrent = true;
+                int i = 0;
+                for (T entity : current)
+                {
+                    if (entity != entities.get(i) || !ids.get(i).equals(nullToEmpty(getId(entity)))
+                            || !names.get(i).equals(nullToEmpty(getName(entity)))
+                            || !Objects.equals(altNames.get(i), getAltName(entity)))
+                    {
+                        isCurrent = false;
+                        break;
+                    }
+
+                    i++;
+                }
+
+                if (isCurrent)
+                {
+                    return false;
+                }
+            }
+
+            rebuild(current);
+            return true;
+        }
+
+        @Nullable
+        private T findExact(String lowercase)
+        {
+            T entity = byId.get(lowercase);
+            if (entity != null && isAlive(entity) && lowercase.equals(toLowerCase(nullToEmpty(getId(entity)))))
+            {
+                return entity;
+            }
+
+            entity = byName.get(lowercase);
+            if (entity != null && isAlive(entity) && (lowercase.equals(toLowerCase(nullToEmpty(getName(entity))))
+                    || (getAltName(entity) != null && lowercase.equals(toLowerCase(getAltName(entity))))))
+            {
+                return entity;
+            }
+
+            return null;
+        }
+
+        @Nullable
+        private T find(String name)
+        {
+            final String lowercase = toLowerCase(name);
+            if (!isLoaded)
+            {
+                refresh();
+            }
+
+            T match = findExact(lowercase);
+            if (match != null)
+            {
+                return match;
+            }
+
+            // Anything added, removed or renamed since the index was built is only found by checking the game
+            if (refresh())
+            {
+                match = findExact(lowercase);
+                if (match != null)
+                {
+                    return match;
+                }
+            }
+
+            return findBestMatch(JaroWinkler.toLowerCase(lowercase));
+        }
+
+        @Nullable
+        private T findBestMatch(char[] query)
+        {
+            final double threshold = Console.getSettings().getTypoCorrectionThreshold();
+
+            // Check IDs first in case multiple entities share the same name
+            if (idIndex == null) idIndex = new StringMatchIndex(ids);
+            final int bestId = idIndex.findBest(query, threshold);
+            if (bestId >= 0)
+            {
+                return entities.get(bestId);
+            }
+
+            // Search again by name if no matching ID is found
+            if (nameIndex == null) nameIndex = new StringMatchIndex(names);
+            final int bestName = nameIndex.findBest(query, threshold);
+            final double nameScore = nameIndex.getLastScore();
+            if (altNames.isEmpty() || altNames.get(0) == null)
+            {
+                return (bestName < 0 ? null : entities.get(bestName));
+            }
+
+            // Entities with two names use whichever scores higher; ties go to the earlier entity
+            if (altNameIndex == null)
+            {
+                final List<String> tmp = new ArrayList<>(altNames.size());
+                for (String altName : altNames) tmp.add(nullToEmpty(altName));
+                altNameIndex = new StringMatchIndex(tmp);
+            }
+
+            final int bestAltName = altNameIndex.findBest(query, threshold);
+            final double altNameScore = altNameIndex.getLastScore();
+            if (bestName < 0 || bestAltName < 0)
+            {
+                return (bestName < 0 ? (bestAltName < 0 ? null : entities.get(bestAltName)) : entities.get(bestName));
+            }
+
+            if (nameScore != altNameScore)
+            {
+                return entities.get(nameScore > altNameScore ? bestName : bestAltName);
+            }
+
+            return entities.get(Math.min(bestName, bestAltName));
+        }
+    }
+
+    private SectorNameIndex()
+    {
+    }
+}
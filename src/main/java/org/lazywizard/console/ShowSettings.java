@@ -15,7 +15,7 @@ import org.lwjgl.input.Keyboard;
 import org.lwjgl.opengl.Display;
 
 import java.awt.Color;
-import java.util.Collections;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -51,8 +51,8 @@ public class ShowSettings implements BaseCommand
         private TextPanelAPI text;
         private Menu currentMenu;
         private boolean showBackground, showCommands, showMemory, showExceptions, showIndex, homeStorage, devModeFlags;
-        private int red, green, blue, scrollback;
-        private float threshold, fontScale;
+        private int red, green, blue, scrollback, frameBudget;
+        private float threshold, fontScale, backgroundScale;
         private CheatTarget defaultTarget;
 
         private enum Menu
@@ -89,7 +89,9 @@ public class ShowSettings implements BaseCommand
             COLOR_B,
             TYPO_THRESHOLD,
             MAX_SCROLLBACK,
-            TEXT_SCALE
+            FRAME_BUDGET,
+            TEXT_SCALE,
+            BACKGROUND_SCALE
         }
 
         protected static String genCheatId()
@@ -111,10 +113,12 @@ public class ShowSettings implements BaseCommand
             fontScale = settings.getFontScaling();
             scrollback = settings.getMaxScrollback();
             threshold = settings.getTypoCorrectionThreshold();
+            frameBudget = settings.getCommandFrameBudget();
             defaultTarget = settings.getDefaultCombatCheatTarget();
             homeStorage = settings.getUseHomeForStorage();
             devModeFlags = settings.getDevModeTogglesDebugFlags();
             showBackground = settings.getShowBackground();
+            backgroundScale = settings.getBackgroundScale();
             showCommands = settings.getShowEnteredCommands();
             showMemory = settings.getShowMemoryUsage();
             showExceptions = settings.getShowExceptionDetails();
@@ -205,6 +209,9 @@ public class ShowSettings implements BaseCommand
                     options.addOption("Show background: " + (showBackground ? "true" : "false"),
                             Option.SHOW_BACKGROUND, getToggleOptionColor(showBackground),
                             "Whether to show the paused game in the background of the overlay.");
+                    options.addSelector("Background resolution", Selector.BACKGROUND_SCALE, Color.WHITE, barWidth, 150f, 0.1f, 1f, ValueDisplayMode.PERCENT,
+                            "The resolution of the overlay's background, as a percentage of the screen's. A lower value uses less VRAM and opens the console faster.");
+                    options.setSelectorValue(Selector.BACKGROUND_SCALE, backgroundScale);
                     options.addOption("Show entered commands: " + (showCommands ? "true" : "false"),
                             Option.SHOW_COMMANDS, getToggleOptionColor(showCommands),
                             "Whether to show the commands you've entered in the overlay.");
@@ -227,11 +234,16 @@ public class ShowSettings implements BaseCommand
                             "Controls how sensitive typo detection is. A higher value means fewer (but more accurate) suggestions when you enter something wrong.");
                     options.setSelectorValue(Selector.TYPO_THRESHOLD, threshold);
 
-                    // Max scrollback (in characters)
-                    options.addSelector("Max scrollback (in characters)", Selector.MAX_SCROLLBACK, Color.WHITE, barWidth, 150f, 0f, 20_000f, ValueDisplayMode.VALUE,
-                            "How many characters of output history will be stored in the overlay between uses. A higher value means slightly more RAM used by the console.");
+                    // Max scrollback (in lines)
+                    options.addSelector("Max scrollback (in lines)", Selector.MAX_SCROLLBACK, Color.WHITE, barWidth, 150f, 100f, 10_000f, ValueDisplayMode.VALUE,
+                            "How many lines of output history will be stored in the overlay between uses. A higher value means slightly more RAM used by the console, but doesn't slow down the overlay.");
                     options.setSelectorValue(Selector.MAX_SCROLLBACK, scrollback);
 
+                    // Time per frame spent on commands that run in the background
+                    options.addSelector("Background command budget (ms per frame)", Selector.FRAME_BUDGET, Color.WHITE, barWidth, 150f, 1f, 50f, ValueDisplayMode.VALUE,
+                            "How long commands that work over multiple frames (AllWeapons, AllHulls, etc) can run each frame. A higher value finishes them sooner, but lowers the framerate while they run.");
+                    options.setSelectorValue(Selector.FRAME_BUDGET, frameBudget);
+
                     // Default target for combat cheats
                     options.addOption("Default combat cheat target: " + defaultTarget, Option.DEFAULT_TARGET,
                             "The default target for combat cheat commands when no argument is passed in.");
@@ -251,9 +263,8 @@ public class ShowSettings implements BaseCommand
                     options.setEnabled(Menu.CHEAT_CONFIRM, settings.getCheatsAllowedForSave());
                     break;
                 case CHEAT_CONFIRM:
-                    final List<String> legalCommands = CommandStore.getLoadedCommands();
+                    final List<String> legalCommands = new ArrayList<>(CommandStore.getLoadedCommands());
                     legalCommands.removeAll(CommandStore.getCommandsWithTag(CommonStrings.CHEAT_TAG));
-                    Collections.sort(legalCommands);
 
                     text.addParagraph("Warning: this will permanently disable cheat codes for the current save!");
                     text.highlightInLastPara(Color.RED, "permanently");
@@ -337,7 +348,7 @@ public class ShowSettings implements BaseCommand
                             + red + ", " + green + ", " + blue + "}.", new Color(red, green, blue));
                     break;
                 case DISABLE_CHEATS:
-                    Global.getSector().getPersistentData().put(genCheatId(), System.nanoTime());
+                    settings.disableCheatsForSave();
                     goToMenu(Menu.MISC);
                     text.addPara("Cheats have been permanently disabled for this save.\n", Color.RED);
                     break;
@@ -353,10 +364,12 @@ public class ShowSettings implements BaseCommand
             settings.setFontScaling(fontScale);
             settings.setTypoCorrectionThreshold(threshold);
             settings.setMaxScrollback(scrollback);
+            settings.setCommandFrameBudget(frameBudget);
             settings.setDefaultCombatCheatTarget(defaultTarget);
             settings.setUseHomeForStorage(homeStorage);
             settings.setDevModeTogglesDebugFlags(devModeFlags);
             settings.setShowBackground(showBackground);
+            settings.setBackgroundScale(backgroundScale);
             settings.setShowEnteredCommands(showCommands);
             settings.setShowMemoryUsage(showMemory);
             settings.setShowCursorIndex(showIndex);
@@ -377,12 +390,19 @@ public class ShowSettings implements BaseCommand
                 options.setSelectorValue(Selector.COLOR_G, green);
                 options.setSelectorValue(Selector.COLOR_B, blue);
             }
+            else if (currentMenu == Menu.OVERLAY)
+            {
+                backgroundScale = Math.round(options.getSelectorValue(Selector.BACKGROUND_SCALE) * 20f) * 0.05f;
+                options.setSelectorValue(Selector.BACKGROUND_SCALE, backgroundScale);
+            }
             else if (currentMenu == Menu.MISC)
             {
                 scrollback = Math.round(options.getSelectorValue(Selector.MAX_SCROLLBACK) / 100f) * 100;
                 options.setSelectorValue(Selector.MAX_SCROLLBACK, scrollback);
                 threshold = Math.round(options.getSelectorValue(Selector.TYPO_THRESHOLD) * 100f) * 0.01f;
                 options.setSelectorValue(Selector.TYPO_THRESHOLD, threshold);
+                frameBudget = Math.round(options.getSelectorValue(Selector.FRAME_BUDGET));
+                options.setSelectorValue(Selector.FRAME_BUDGET, frameBudget);
             }
         }
 
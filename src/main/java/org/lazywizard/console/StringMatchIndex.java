@@ -0,0 +1,543 @@
+package org.lazywizard.console;
+
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Speeds up {@link CommandUtils#findBestStringMatch(String, Collection)} by keeping the lowercase characters of each
+ * id ready for {@link JaroWinkler}, and on large collections of ids (every ship variant, weapon, etc in the game) by
+ * ruling out most candidates without scoring them.
+ * <p>
+ * For every character, the index keeps a posting list of the ids that contain it and how many times. A search walks
+ * the posting lists of the characters in the query to find how many characters each id could possibly share with it,
+ * which puts an upper limit on the Jaro-Winkler similarity that id can score. Only ids whose limit could beat the best
+ * score found so far are actually scored, in their original order, so the result is always the same as scoring every
+ * id would give. Ids that don't share a single character with the query are never looked at.
+ * <p>
+ * Building posting lists costs about as much as one unindexed search, so they are only built for large collections.
+ * The most recently used indexes are kept for later searches of the same ids.
+ * <p>
+ * Searches that still need to score thousands of candidates are split across a fork/join pool with one thread per
+ * core. The result is always the same as a search on a single thread.
+ */
+final class StringMatchIndex
+{
+    private static final int MIN_POSTINGS_SIZE = 256;
+    private static final int MAX_CACHED = 12;
+    // Searches scoring fewer candidates than this aren't worth handing to other threads
+    private static final int MIN_PARALLEL_CANDIDATES = 4_096, MIN_TASK_SIZE = 1_024;
+    // Posting entries store the id's index in the upper bits and how many times it contains a character in the lower
+    private static final int COUNT_BITS = 8, COUNT_MASK = (1 << COUNT_BITS) - 1;
+    // Most recently used first
+    private static final LinkedList<StringMatchIndex> cache = new LinkedList<>();
+    private final String[] ids;
+    private final char[][] lowercaseIds;
+    @Nullable private final char[] alphabet; // Sorted, for binary search
+    @Nullable private final int[][] postings;
+    // Reused between searches
+    @Nullable private final int[] sharedWithQuery, sharedWithId, touched;
+    private int numTouched = 0;
+    private double lastScore = 0.0;
+
+    // Indexes built this way aren't cached; use getIndex() unless the caller keeps the index itself
+    StringMatchIndex(Collection<String> toIndex)
+    {
+        ids = toIndex.toArray(new String[toIndex.size()]);
+        lowercaseIds = new char[ids.length][];
+        for (int i = 0; i < ids.length; i++)
+        {
+            lowercaseIds[i] = JaroWinkler.toLowerCase(ids[i]);
+        }
+
+        if (ids.length < MIN_POSTINGS_SIZE)
+        {
+            alphabet = null;
+            postings = null;
+            sharedWithQuery = sharedWithId = touched = null;
+            return;
+        }
+
+        final Map<Character, int[]> builder = new TreeMap<>();
+        final Map<Character, Integer> sizes = new HashMap<>();
+        final int[] charCounts = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < ids.length; i++)
+        {
+            final char[] lowercase = lowercaseIds[i];
+            for (char ch : lowercase)
+            {
+                if (charCounts[ch]++ > 0)
+                {
+                    continue;
+                }
+
+                // First time this character was seen in this id
+                int[] posting = builder.get(ch);
+                Integer size = sizes.get(ch);
+                if (posting == null)
+                {
+                    posting = new int[16];
+                    size = 0;
+                }
+                else if (size == posting.length)
+                {
+                    posting = Arrays.copyOf(posting, size * 2);
+                }
+
+                posting[size] = i << COUNT_BITS;
+                builder.put(ch, posting);
+                sizes.put(ch, size + 1);
+            }
+
+            // Store the counts; counts too large to store are saturated and treated as unlimited when searching
+            for (char ch : lowercase)
+            {
+                if (charCounts[ch] == 0)
+                {
+                    continue;
+                }
+
+                final int[] posting = builder.get(ch);
+                posting[sizes.get(ch) - 1] |= Math.min(charCounts[ch], COUNT_MASK);
+                charCounts[ch] = 0;
+            }
+        }
+
+        alphabet = new char[builder.size()];
+        postings = new int[builder.size()][];
+        int index = 0;
+        for (Map.Entry<Character, int[]> entry : builder.entrySet())
+        {
+            alphabet[index] = entry.getKey();
+            postings[index] = Arrays.copyOf(entry.getValue(), sizes.get(entry.getKey()));
+            index++;
+        }
+
+        sharedWithQuery = new int[ids.length];
+        sharedWithId = new int[ids.length];
+        touched = new int[ids.length];
+    }
+
+    /**
+     * Returns an index of {@code toSearch}, reusing a previously built one if it contains the same ids in the same
+     * order. Checking for a cached index is far cheaper than scoring, as the game hands out the same {@link String}
+     * instances every time.
+     */
+    static synchronized StringMatchIndex getIndex(Collection<String> toSearch)
+    {
+        for (Iterator<StringMatchIndex> iter = cache.iterator(); iter.hasNext(); )
+        {
+            final StringMatchIndex index = iter.next();
+            if (index.matches(toSearch))
+            {
+                iter.remove();
+                cache.addFirst(index);
+                return index;
+            }
+        }
+
+        final StringMatchIndex index = new StringMatchIndex(toSearch);
+        cache.addFirst(index);
+        if (cache.size() > MAX_CACHED)
+        {
+            cache.removeLast();
+        }
+
+        return index;
+    }
+
+    private boolean matches(Collection<String> toSearch)
+    {
+        if (toSearch.size() != ids.length)
+        {
+            return false;
+        }
+
+        int i = 0;
+        for (String id : toSearch)
+        {
+            if (!ids[i++].equals(id))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    String getId(int index)
+    {
+        return ids[index];
+    }
+
+    // Score of the match found by the last call to findBest()
+    double getLastScore()
+    {
+        return lastScore;
+    }
+
+    /**
+     * Finds the id that scores highest against {@code lowercaseQuery}, exactly as scoring every id in order would:
+     * ties go to the earliest id, and the first perfect match is returned immediately.
+     *
+     * @param lowercaseQuery The lowercase string to search for.
+     * @param minScore       Only ids scoring higher than this are considered a match.
+     *
+     * @return The index of the best match, or -1 if no id scored above {@code minScore}.
+     */
+    int findBest(char[] lowercaseQuery, double minScore)
+    {
+        return findBest(lowercaseQuery, minScore, true);
+    }
+
+    /**
+     * Same as {@link #findBest(char[], double)}, optionally without ever splitting the search across threads.
+     */
+    synchronized int findBest(char[] lowercaseQuery, double minScore, boolean allowParallel)
+    {
+        // Ids sharing no characters with the query score 0, which only matters if the minimum is negative
+        final boolean isIndexed = (postings != null && lowercaseQuery.length > 0 && minScore >= 0.0);
+        int numCandidates = ids.length;
+        if (isIndexed)
+        {
+            collectCandidates(lowercaseQuery);
+            Arrays.sort(touched, 0, numTouched);
+            numCandidates = numTouched;
+        }
+
+        try
+        {
+            final Search search;
+            if (allowParallel && numCandidates >= MIN_PARALLEL_CANDIDATES && Parallel.PARALLELISM > 1)
+            {
+                search = new Search(lowercaseQuery, isIndexed, 0, numCandidates, minScore,
+                        new AtomicInteger(Integer.MAX_VALUE));
+                Parallel.POOL.invoke(search);
+            }
+            else
+            {
+                search = new Search(lowercaseQuery, isIndexed, 0, numCandidates, minScore, null);
+                search.scan();
+            }
+
+            lastScore = search.bestScore;
+            return search.bestIndex;
+        }
+        finally
+        {
+            if (isIndexed)
+            {
+                for (int i = 0; i < numTouched; i++)
+                {
+                    sharedWithQuery[touched[i]] = 0;
+                    sharedWithId[touched[i]] = 0;
+                }
+
+                numTouched = 0;
+            }
+        }
+    }
+
+    /**
+     * Finds the ids scoring highest against {@code lowercaseQuery} in a single pass, keeping the best so far in a
+     * bounded min-heap so no more than {@code indexes.length} results are ever held. Ties go to the earliest id, and
+     * once the heap is full, candidates that can't beat its worst entry are skipped without being scored.
+     *
+     * @param lowercaseQuery The lowercase string to search for.
+     * @param minScore       Only ids scoring higher than this are included.
+     * @param indexes        Receives the indexes of the matches, best first. Its length is how many are wanted.
+     * @param scores         Receives the score of each match. Must be at least as long as {@code indexes}.
+     *
+     * @return How many matches were found, at most {@code indexes.length}.
+     */
+    synchronized int findTop(char[] lowercaseQuery, double minScore, int[] indexes, double[] scores)
+    {
+        final int maxResults = indexes.length;
+        if (maxResults == 0)
+        {
+            return 0;
+        }
+
+        final boolean isIndexed = (postings != null && lowercaseQuery.length > 0 && minScore >= 0.0);
+        int numCandidates = ids.length;
+        if (isIndexed)
+        {
+            collectCandidates(lowercaseQuery);
+            Arrays.sort(touched, 0, numTouched);
+            numCandidates = numTouched;
+        }
+
+        int size = 0;
+        try
+        {
+            final int queryLength = lowercaseQuery.length;
+            for (int i = 0; i < numCandidates; i++)
+            {
+                // The worst match kept is at the root; a later candidate has to score strictly higher to replace it
+                final double floor = (size == maxResults ? scores[0] : minScore);
+                final int index = (isIndexed ? touched[i] : i);
+                final char[] lowercaseId = lowercaseIds[index];
+                final double score;
+                if (isIndexed)
+                {
+                    final double limit = (queryLength <= lowercaseId.length
+                            ? JaroWinkler.maxSimilarity(lowercaseQuery, queryLength, lowercaseId, lowercaseId.length,
+                            sharedWithQuery[index])
+                            : JaroWinkler.maxSimilarity(lowercaseId, lowercaseId.length, lowercaseQuery, queryLength,
+                            sharedWithId[index]));
+                    if (limit <= floor)
+                    {
+                        continue;
+                    }
+
+                    score = JaroWinkler.similarity(lowercaseQuery, queryLength, lowercaseId, lowercaseId.length);
+                }
+                else
+                {
+                    score = JaroWinkler.similarity(lowercaseQuery, queryLength, lowercaseId, lowercaseId.length,
+                            floor);
+                }
+
+                if (score <= floor)
+                {
+                    continue;
+                }
+
+                if (size < maxResults)
+                {
+                    indexes[size] = index;
+                    scores[size] = score;
+                    siftUp(indexes, scores, size++);
+                }
+                else
+                {
+                    indexes[0] = index;
+                    scores[0] = score;
+                    siftDown(indexes, scores, 0, size);
+                }
+            }
+        }
+        finally
+        {
+            if (isIndexed)
+            {
+                for (int i = 0; i < numTouched; i++)
+                {
+                    sharedWithQuery[touched[i]] = 0;
+                    sharedWithId[touched[i]] = 0;
+                }
+
+                numTouched = 0;
+            }
+        }
+
+        // Heapsort in place: moving the worst match to the end each time leaves the best first
+        for (int end = size - 1; end > 0; end--)
+        {
+            swap(indexes, scores, 0, end);
+            siftDown(indexes, scores, 0, end);
+        }
+
+        return size;
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Min-heap helpers">
+    // Whether match a ranks below match b: a lower score, or the same score from a later id
+    private static boolean isWorse(int[] indexes, double[] scores, int a, int b)
+    {
+        return scores[a] < scores[b] || (scores[a] == scores[b] && indexes[a] > indexes[b]);
+    }
+
+    private static void siftUp(int[] indexes, double[] scores, int pos)
+    {
+        while (pos > 0)
+        {
+            final int parent = (pos - 1) >>> 1;
+            if (!isWorse(indexes, scores, pos, parent))
+            {
+                return;
+            }
+
+            swap(indexes, scores, pos, parent);
+            pos = parent;
+        }
+    }
+
+    private static void siftDown(int[] indexes, double[] scores, int pos, int size)
+    {
+        while (true)
+        {
+            final int left = 2 * pos + 1, right = left + 1;
+            int worst = pos;
+            if (left < size && isWorse(indexes, scores, left, worst)) worst = left;
+            if (right < size && isWorse(indexes, scores, right, worst)) worst = right;
+            if (worst == pos)
+            {
+                return;
+            }
+
+            swap(indexes, scores, pos, worst);
+            pos = worst;
+        }
+    }
+
+    private static void swap(int[] indexes, double[] scores, int a, int b)
+    {
+        final int tmpIndex = indexes[a];
+        indexes[a] = indexes[b];
+        indexes[b] = tmpIndex;
+        final double tmpScore = scores[a];
+        scores[a] = scores[b];
+        scores[b] = tmpScore;
+    }
+    //</editor-fold>
+
+    // Counts, for every id sharing a character with the query, how many characters of the query appear in the id and
+    // how many characters of the id appear in the query
+    private void collectCandidates(char[] lowercaseQuery)
+    {
+        final char[] query = Arrays.copyOf(lowercaseQuery, lowercaseQuery.length);
+        Arrays.sort(query);
+        for (int start = 0; start < query.length; )
+        {
+            final char ch = query[start];
+            int end = start + 1;
+            while (end < query.length && query[end] == ch) end++;
+            final int inQuery = end - start;
+            start = end;
+
+            final int charIndex = Arrays.binarySearch(alphabet, ch);
+            if (charIndex < 0)
+            {
+                continue;
+            }
+
+            for (int entry : postings[charIndex])
+            {
+                final int index = entry >>> COUNT_BITS, inId = entry & COUNT_MASK;
+                if (sharedWithQuery[index] == 0)
+                {
+                    touched[numTouched++] = index;
+                }
+
+                sharedWithQuery[index] += inQuery;
+                // A saturated count could be anything, so it can't limit the score
+                sharedWithId[index] += (inId == COUNT_MASK ? Character.MAX_VALUE : inId);
+            }
+        }
+    }
+
+    // Created on first use, so the threads only exist if a search was ever large enough to need them
+    private static final class Parallel
+    {
+        private static final int PARALLELISM = Runtime.getRuntime().availableProcessors();
+        private static final ForkJoinPool POOL = new ForkJoinPool(PARALLELISM);
+    }
+
+    /**
+     * Scores a range of candidates: indexes into {@link #touched} if the search is indexed, otherwise ids themselves.
+     * Large ranges are split in half until they are small enough to be scored by a single thread. Each half keeps its
+     * own best match, and the halves are merged preferring the earlier half on ties, so the result is identical to
+     * scoring every candidate in order on one thread. Candidates are scored in the same order within each range, and
+     * only ruled out when they couldn't beat that range's best match.
+     */
+    private final class Search extends RecursiveAction
+    {
+        private final char[] query;
+        private final boolean isIndexed;
+        private final int from, to;
+        // Position of the earliest perfect match found by any range; later positions can't win and are skipped
+        @Nullable private final AtomicInteger firstPerfect;
+        private int bestIndex = -1;
+        private double bestScore;
+
+        private Search(char[] query, boolean isIndexed, int from, int to, double minScore,
+                       @Nullable AtomicInteger firstPerfect)
+        {
+            this.query = query;
+            this.isIndexed = isIndexed;
+            this.from = from;
+            this.to = to;
+            this.firstPerfect = firstPerfect;
+            bestScore = minScore;
+        }
+
+        @Override
+        protected void compute()
+        {
+            if (to - from <= MIN_TASK_SIZE)
+            {
+                scan();
+                return;
+            }
+
+            final int mid = (from + to) >>> 1;
+            final Search left = new Search(query, isIndexed, from, mid, bestScore, firstPerfect),
+                    right = new Search(query, isIndexed, mid, to, bestScore, firstPerfect);
+            invokeAll(left, right);
+
+            final Search best = (right.bestScore > left.bestScore ? right : left);
+            bestIndex = best.bestIndex;
+            bestScore = best.bestScore;
+        }
+
+        private void scan()
+        {
+            final int queryLength = query.length;
+            for (int i = from; i < to; i++)
+            {
+                if (firstPerfect != null && i > firstPerfect.get())
+                {
+                    return;
+                }
+
+                final int index = (isIndexed ? touched[i] : i);
+                final char[] lowercaseId = lowercaseIds[index];
+                final double score;
+                if (isIndexed)
+                {
+                    final double limit = (queryLength <= lowercaseId.length
+                            ? JaroWinkler.maxSimilarity(query, queryLength, lowercaseId, lowercaseId.length,
+                            sharedWithQuery[index])
+                            : JaroWinkler.maxSimilarity(lowercaseId, lowercaseId.length, query, queryLength,
+                            sharedWithId[index]));
+                    if (limit < 1.0 && limit <= bestScore)
+                    {
+                        continue;
+                    }
+
+                    score = JaroWinkler.similarity(query, queryLength, lowercaseId, lowercaseId.length);
+                }
+                else
+                {
+                    score = JaroWinkler.similarity(query, queryLength, lowercaseId, lowercaseId.length, bestScore);
+                }
+
+                if (score == 1.0)
+                {
+                    bestIndex = index;
+                    bestScore = score;
+                    if (firstPerfect != null)
+                    {
+                        int current = firstPerfect.get();
+                        while (i < current && !firstPerfect.compareAndSet(current, i))
+                        {
+                            current = firstPerfect.get();
+                        }
+                    }
+
+                    return;
+                }
+
+                if (score > bestScore)
+                {
+                    bestScore = score;
+                    bestIndex = index;
+                }
+            }
+        }
+    }
+}
@@ -3,6 +3,7 @@ package org.lazywizard.console.commands;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI.CargoItemType;
 import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandSyntax;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
 
@@ -10,6 +11,9 @@ import static org.lazywizard.console.CommandUtils.*;
 
 public class AddItem implements BaseCommand
 {
+    // Supports reversed arguments
+    private static final CommandSyntax SYNTAX = CommandSyntax.compile("<id> [amount:int=1]", "<amount:int> <id>");
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -24,47 +28,29 @@ public class AddItem implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        String[] tmp = args.split(" ");
-
-        if (tmp.length == 1)
-        {
-            return runCommand(args + " 1", context);
-        }
-
-        if (tmp.length != 2)
+        final CommandSyntax.Arguments parsed = SYNTAX.parse(args);
+        if (parsed == null)
         {
             return CommandResult.BAD_SYNTAX;
         }
 
-        // Support for reversed arguments
-        int amount;
-        if (isInteger(tmp[1]))
-        {
-            amount = Integer.parseInt(tmp[1]);
-        }
-        else
-        {
-            if (!isInteger(tmp[0]))
-            {
-                return CommandResult.BAD_SYNTAX;
-            }
-
-            amount = Integer.parseInt(tmp[0]);
-            tmp[0] = tmp[1];
-        }
+        final String toFind = parsed.getString("id");
+        final int amount = parsed.getInt("amount");
 
-        String id = findBestStringMatch(tmp[0], Global.getSector().getEconomy().getAllCommodityIds());
+        String id = findBestStringMatch(toFind, Global.getSector().getEconomy().getAllCommodityIds());
         if (id == null)
         {
-            id = findBestStringMatch(tmp[0], AddSpecial.getSpecialItemIds());
+            id = findBestStringMatch(toFind, AddSpecial.getSpecialItemIds());
             if (id == null)
             {
-                Console.showMessage("No commodity found with id '" + tmp[0]
-                        + "'! Use 'list items' for a complete list of valid ids.");
+                Console.showMessage("No commodity found with id '" + toFind
+                        + "'! Use 'list items' for a complete list of valid ids."
+                        + getSuggestions(toFind, Global.getSector().getEconomy().getAllCommodityIds(),
+                        AddSpecial.getSpecialItemIds()));
                 return CommandResult.ERROR;
             }
 
-            return new AddSpecial().runCommand(tmp[0], context);
+            return new AddSpecial().runCommand(toFind, context);
         }
 
         Global.getSector().getPlayerFleet().getCargo().addItems(
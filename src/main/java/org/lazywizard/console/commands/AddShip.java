@@ -8,6 +8,7 @@ import com.fs.starfarer.api.fleet.FleetMemberType;
 import com.fs.starfarer.api.impl.campaign.FleetEncounterContext;
 import org.apache.log4j.Level;
 import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandSyntax;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
 import org.lazywizard.lazylib.MathUtils;
@@ -16,6 +17,9 @@ import static org.lazywizard.console.CommandUtils.*;
 
 public class AddShip implements BaseCommand
 {
+    // Supports reversed arguments
+    private static final CommandSyntax SYNTAX = CommandSyntax.compile("<id> [amount:int=1]", "<amount:int> <id>");
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -30,41 +34,21 @@ public class AddShip implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        String[] tmp = args.split(" ");
-
-        if (tmp.length == 1)
-        {
-            return runCommand(args + " 1", context);
-        }
-
-        if (tmp.length != 2)
+        final CommandSyntax.Arguments parsed = SYNTAX.parse(args);
+        if (parsed == null)
         {
             return CommandResult.BAD_SYNTAX;
         }
 
+        final String shipId = parsed.getString("id");
+        final int amount = parsed.getInt("amount");
+
         // Redirect fighter wings to AddWing
-        if (tmp[0].endsWith("_wing") || tmp[1].endsWith("_wing"))
+        if (shipId.endsWith("_wing"))
         {
             return new AddWing().runCommand(args, context);
         }
 
-        // Support for reversed arguments
-        int amount;
-        if (isInteger(tmp[1]))
-        {
-            amount = Integer.parseInt(tmp[1]);
-        }
-        else
-        {
-            if (!isInteger(tmp[0]))
-            {
-                return CommandResult.BAD_SYNTAX;
-            }
-
-            amount = Integer.parseInt(tmp[0]);
-            tmp[0] = tmp[1];
-        }
-
         if (amount <= 0)
         {
             return CommandResult.SUCCESS;
@@ -74,7 +58,7 @@ public class AddShip implements BaseCommand
         String variant = null;
         for (String id : Global.getSettings().getAllVariantIds())
         {
-            if (tmp[0].equalsIgnoreCase(id))
+            if (shipId.equalsIgnoreCase(id))
             {
                 variant = id;
                 break;
@@ -84,7 +68,7 @@ public class AddShip implements BaseCommand
         // Test for empty hulls
         if (variant == null)
         {
-            final String withHull = tmp[0] + "_Hull";
+            final String withHull = shipId + "_Hull";
             for (String id : Global.getSettings().getAllVariantIds())
             {
                 if (withHull.equalsIgnoreCase(id))
@@ -101,14 +85,15 @@ public class AddShip implements BaseCommand
             try
             {
                 variant = Global.getSettings().loadJSON("data/variants/"
-                        + tmp[0] + ".variant").getString("variantId");
+                        + shipId + ".variant").getString("variantId");
                 Console.showMessage("Warning: variant ID doesn't match"
                         + " .variant filename!", Level.WARN);
             }
             catch (Exception ex)
             {
-                Console.showMessage("No ship found with id '" + tmp[0]
-                        + "'! Use 'list ships' for a complete list of valid ids.");
+                Console.showMessage("No ship found with id '" + shipId
+                        + "'! Use 'list ships' for a complete list of valid ids."
+                        + getSuggestions(shipId, Global.getSettings().getAllVariantIds()));
                 return CommandResult.ERROR;
             }
         }
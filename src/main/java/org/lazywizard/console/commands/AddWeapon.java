@@ -3,12 +3,16 @@ package org.lazywizard.console.commands;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandSyntax;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
 import static org.lazywizard.console.CommandUtils.*;
 
 public class AddWeapon implements BaseCommand
 {
+    // Supports reversed arguments
+    private static final CommandSyntax SYNTAX = CommandSyntax.compile("<id> [amount:int=1]", "<amount:int> <id>");
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -23,40 +27,21 @@ public class AddWeapon implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        String[] tmp = args.split(" ");
-
-        if (tmp.length == 1)
-        {
-            return runCommand(args + " 1", context);
-        }
-
-        if (tmp.length != 2)
+        final CommandSyntax.Arguments parsed = SYNTAX.parse(args);
+        if (parsed == null)
         {
             return CommandResult.BAD_SYNTAX;
         }
 
-        final int amount;
-        if (!isInteger(tmp[1]))
-        {
-            // Support for reversed arguments
-            if (!isInteger(tmp[0]))
-            {
-                return CommandResult.BAD_SYNTAX;
-            }
-
-            amount = Integer.parseInt(tmp[0]);
-            tmp[0] = tmp[1];
-        }
-        else
-        {
-            amount = Integer.parseInt(tmp[1]);
-        }
+        final String toFind = parsed.getString("id");
+        final int amount = parsed.getInt("amount");
 
-        final String wepId = findBestStringMatch(tmp[0], Global.getSector().getAllWeaponIds());
+        final String wepId = findBestStringMatch(toFind, Global.getSector().getAllWeaponIds());
         if (wepId == null)
         {
-            Console.showMessage("No weapon found with id '" + tmp[0]
-                    + "'! Use 'list weapons' for a complete list of valid ids.");
+            Console.showMessage("No weapon found with id '" + toFind
+                    + "'! Use 'list weapons' for a complete list of valid ids."
+                    + getSuggestions(toFind, Global.getSector().getAllWeaponIds()));
             return CommandResult.ERROR;
         }
 
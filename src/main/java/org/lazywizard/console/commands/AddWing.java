@@ -3,12 +3,16 @@ package org.lazywizard.console.commands;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandSyntax;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
 import static org.lazywizard.console.CommandUtils.*;
 
 public class AddWing implements BaseCommand
 {
+    // Supports reversed arguments
+    private static final CommandSyntax SYNTAX = CommandSyntax.compile("<id> [amount:int=1]", "<amount:int> <id>");
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -23,49 +27,29 @@ public class AddWing implements BaseCommand
             return CommandResult.BAD_SYNTAX;
         }
 
-        String[] tmp = args.split(" ");
-
-        if (tmp.length == 1)
-        {
-            return runCommand(args + " 1", context);
-        }
-
-        if (tmp.length != 2)
+        final CommandSyntax.Arguments parsed = SYNTAX.parse(args);
+        if (parsed == null)
         {
             return CommandResult.BAD_SYNTAX;
         }
 
-        final int amount;
-        if (!isInteger(tmp[1]))
-        {
-            // Support for reversed arguments
-            if (!isInteger(tmp[0]))
-            {
-                return CommandResult.BAD_SYNTAX;
-            }
-
-            amount = Integer.parseInt(tmp[0]);
-            tmp[0] = tmp[1];
-        }
-        else
-        {
-            amount = Integer.parseInt(tmp[1]);
-        }
+        String id = parsed.getString("id");
+        final int amount = parsed.getInt("amount");
 
         if (amount <= 0)
         {
             return CommandResult.SUCCESS;
         }
 
-        if (!tmp[0].endsWith("_wing"))
+        if (!id.endsWith("_wing"))
         {
-            tmp[0] += "_wing";
+            id += "_wing";
         }
 
-        final String variant = findBestStringMatch(tmp[0], Global.getSector().getAllFighterWingIds());
+        final String variant = findBestStringMatch(id, Global.getSector().getAllFighterWingIds());
         if (variant == null)
         {
-            Console.showMessage("No LPC found with id '" + tmp[0]
+            Console.showMessage("No LPC found with id '" + id
                     + "'! Use 'list wings' for a complete list of valid ids.");
             return CommandResult.ERROR;
         }
@@ -7,9 +7,9 @@ import com.fs.starfarer.api.combat.ShipHullSpecAPI;
 import com.fs.starfarer.api.loading.FighterWingSpecAPI;
 import com.fs.starfarer.api.loading.IndustrySpecAPI;
 import com.fs.starfarer.api.loading.WeaponSpecAPI;
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.util.*;
@@ -18,8 +18,17 @@ import static org.lazywizard.console.CommandUtils.findBestFactionMatch;
 
 // TODO: This needs cleanup after adding the optional faction argument (supporting logic is ugly)
 // TODO: Add resetblueprints command
-public class AllBlueprints implements BaseCommand
+public class AllBlueprints extends IncrementalCommand
 {
+    private List<ShipHullSpecAPI> ships = Collections.emptyList();
+    private List<FighterWingSpecAPI> wings = Collections.emptyList();
+    private List<WeaponSpecAPI> weapons = Collections.emptyList();
+    private List<IndustrySpecAPI> industries = Collections.emptyList();
+    private final List<String> unlockedShips = new ArrayList<>(), unlockedWings = new ArrayList<>(),
+            unlockedWeapons = new ArrayList<>(), unlockedIndustries = new ArrayList<>();
+    private Set<FactionAPI> factions;
+    private FactionAPI player;
+
     public static boolean isLearnable(ShipHullSpecAPI spec)
     {
         if (spec.getHullSize() == HullSize.FIGHTER) return false;
@@ -59,7 +68,7 @@ public class AllBlueprints implements BaseCommand
     }
 
     @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    protected CommandResult begin(String args, CommandContext context)
     {
         if (!context.isInCampaign())
         {
@@ -133,159 +142,164 @@ public class AllBlueprints implements BaseCommand
                     + CollectionUtils.implode(names) + ".");
         }
 
-        final FactionAPI player = Global.getSector().getPlayerFaction();
-        if (unlockShips)
+        if (unlockShips) ships = Global.getSettings().getAllShipHullSpecs();
+        if (unlockWings) wings = Global.getSettings().getAllFighterWingSpecs();
+        if (unlockWeapons) weapons = Global.getSettings().getAllWeaponSpecs();
+        if (unlockIndustries) industries = Global.getSettings().getAllIndustrySpecs();
+        this.factions = factions;
+        player = Global.getSector().getPlayerFaction();
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    protected int getTotalWork()
+    {
+        return ships.size() + wings.size() + weapons.size() + industries.size();
+    }
+
+    // Units of work are every ship, then every wing, then every weapon, then every industry
+    @Override
+    protected void doWork(int unit)
+    {
+        if (unit < ships.size())
+        {
+            unlockShip(ships.get(unit));
+            return;
+        }
+
+        unit -= ships.size();
+        if (unit < wings.size())
+        {
+            unlockWing(wings.get(unit));
+            return;
+        }
+
+        unit -= wings.size();
+        if (unit < weapons.size())
+        {
+            unlockWeapon(weapons.get(unit));
+            return;
+        }
+
+        unlockIndustry(industries.get(unit - weapons.size()));
+    }
+
+    private void unlockShip(ShipHullSpecAPI spec)
+    {
+        if (isLearnable(spec) && !player.knowsShip(spec.getHullId()))
         {
-            final List<String> unlocked = new ArrayList<>();
-            for (ShipHullSpecAPI spec : Global.getSettings().getAllShipHullSpecs())
+            if (factions.isEmpty())
+            {
+                player.addKnownShip(spec.getHullId(), true);
+                unlockedShips.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
+            }
+            else
             {
-                if (isLearnable(spec) && !player.knowsShip(spec.getHullId()))
+                for (FactionAPI faction : factions)
                 {
-                    if (factions.isEmpty())
+                    if (faction.knowsShip(spec.getHullId()))
                     {
                         player.addKnownShip(spec.getHullId(), true);
-                        unlocked.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsShip(spec.getHullId()))
-                            {
-                                player.addKnownShip(spec.getHullId(), true);
-                                unlocked.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
-                            }
-                        }
+                        unlockedShips.add(spec.getHullId() + " (" + spec.getHullNameWithDashClass() + ")");
+                        break;
                     }
                 }
             }
+        }
+    }
 
-            if (unlocked.isEmpty())
+    private void unlockWing(FighterWingSpecAPI spec)
+    {
+        if (isLearnable(spec) && !player.knowsFighter(spec.getId()))
+        {
+            if (factions.isEmpty())
             {
-                Console.showMessage("You already know all unlockable ships!");
+                player.addKnownFighter(spec.getId(), true);
+                unlockedWings.add(spec.getId() + " (" + spec.getWingName() + ")");
             }
             else
             {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " ships:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockWings)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (FighterWingSpecAPI spec : Global.getSettings().getAllFighterWingSpecs())
-            {
-                if (isLearnable(spec) && !player.knowsFighter(spec.getId()))
+                for (FactionAPI faction : factions)
                 {
-                    if (factions.isEmpty())
+                    if (faction.knowsFighter(spec.getId()))
                     {
                         player.addKnownFighter(spec.getId(), true);
-                        unlocked.add(spec.getId() + " (" + spec.getWingName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsFighter(spec.getId()))
-                            {
-                                player.addKnownFighter(spec.getId(), true);
-                                unlocked.add(spec.getId() + " (" + spec.getWingName() + ")");
-                            }
-                        }
+                        unlockedWings.add(spec.getId() + " (" + spec.getWingName() + ")");
+                        break;
                     }
                 }
             }
+        }
+    }
 
-            if (unlocked.isEmpty())
+    private void unlockWeapon(WeaponSpecAPI spec)
+    {
+        if (isLearnable(spec) && !player.knowsWeapon(spec.getWeaponId()))
+        {
+            if (factions.isEmpty())
             {
-                Console.showMessage("You already know all unlockable fighter wings!");
+                player.addKnownWeapon(spec.getWeaponId(), true);
+                unlockedWeapons.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
             }
             else
             {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " fighter wings:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockWeapons)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (WeaponSpecAPI spec : Global.getSettings().getAllWeaponSpecs())
-            {
-                if (isLearnable(spec) && !player.knowsWeapon(spec.getWeaponId()))
+                for (FactionAPI faction : factions)
                 {
-                    if (factions.isEmpty())
+                    if (faction.knowsWeapon(spec.getWeaponId()))
                     {
                         player.addKnownWeapon(spec.getWeaponId(), true);
-                        unlocked.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsWeapon(spec.getWeaponId()))
-                            {
-                                player.addKnownWeapon(spec.getWeaponId(), true);
-                                unlocked.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
-                            }
-                        }
+                        unlockedWeapons.add(spec.getWeaponId() + " (" + spec.getWeaponName() + ")");
+                        break;
                     }
                 }
             }
+        }
+    }
 
-            if (unlocked.isEmpty())
+    private void unlockIndustry(IndustrySpecAPI spec)
+    {
+        if (isLearnable(spec) && !player.knowsIndustry(spec.getId()))
+        {
+            if (factions.isEmpty())
             {
-                Console.showMessage("You already know all unlockable weapons!");
+                player.addKnownIndustry(spec.getId());
+                unlockedIndustries.add(spec.getId() + " (" + spec.getName() + ")");
             }
             else
             {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " weapons:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
-        }
-
-        if (unlockIndustries)
-        {
-            final List<String> unlocked = new ArrayList<>();
-            for (IndustrySpecAPI spec : Global.getSettings().getAllIndustrySpecs())
-            {
-                if (isLearnable(spec) && !player.knowsIndustry(spec.getId()))
+                for (FactionAPI faction : factions)
                 {
-                    if (factions.isEmpty())
+                    if (faction.knowsIndustry(spec.getId()))
                     {
                         player.addKnownIndustry(spec.getId());
-                        unlocked.add(spec.getId() + " (" + spec.getName() + ")");
-                    }
-                    else
-                    {
-                        for (FactionAPI faction : factions)
-                        {
-                            if (faction.knowsIndustry(spec.getId()))
-                            {
-                                player.addKnownIndustry(spec.getId());
-                                unlocked.add(spec.getId() + " (" + spec.getName() + ")");
-                            }
-                        }
+                        unlockedIndustries.add(spec.getId() + " (" + spec.getName() + ")");
+                        break;
                     }
                 }
             }
+        }
+    }
 
-            if (unlocked.isEmpty())
-            {
-                Console.showMessage("You already know all unlockable industries!");
-            }
-            else
-            {
-                Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
-                Console.showIndentedMessage("Unlocked " + unlocked.size() + " industries:",
-                        CollectionUtils.implode(unlocked), 3);
-            }
+    private static void showUnlocked(List<String> unlocked, String type)
+    {
+        if (unlocked.isEmpty())
+        {
+            Console.showMessage("You already know all unlockable " + type + "!");
+        }
+        else
+        {
+            Collections.sort(unlocked, String.CASE_INSENSITIVE_ORDER);
+            Console.showIndentedMessage("Unlocked " + unlocked.size() + " " + type + ":",
+                    CollectionUtils.implode(unlocked), 3);
         }
+    }
 
-        return CommandResult.SUCCESS;
+    @Override
+    protected void finish(boolean wasCancelled)
+    {
+        if (!ships.isEmpty()) showUnlocked(unlockedShips, "ships");
+        if (!wings.isEmpty()) showUnlocked(unlockedWings, "fighter wings");
+        if (!weapons.isEmpty()) showUnlocked(unlockedWeapons, "weapons");
+        if (!industries.isEmpty()) showUnlocked(unlockedIndustries, "industries");
     }
 }
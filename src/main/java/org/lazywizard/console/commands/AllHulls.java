@@ -1,6 +1,8 @@
 package org.lazywizard.console.commands;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
@@ -8,17 +10,20 @@ import com.fs.starfarer.api.campaign.FleetDataAPI;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
 import com.fs.starfarer.api.fleet.FleetMemberAPI;
 import com.fs.starfarer.api.fleet.FleetMemberType;
-import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
 
-public class AllHulls implements BaseCommand
+public class AllHulls extends IncrementalCommand
 {
+    private List<String> ids;
+    private FleetDataAPI target;
+    private String targetName;
+    private int total = 0;
+
     @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    protected CommandResult begin(String args, CommandContext context)
     {
         if (!context.isInCampaign())
         {
@@ -26,10 +31,6 @@ public class AllHulls implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        FleetDataAPI target;
-        String targetName;
-        int total = 0;
-
         if (args == null || args.isEmpty())
         {
             target = Storage.retrieveStorageFleetData();
@@ -69,25 +70,38 @@ public class AllHulls implements BaseCommand
             targetName = token.getFullName();
         }
 
-        final Set<String> ids = new LinkedHashSet<>(Global.getSector().getAllEmptyVariantIds());
+        final Set<String> missing = new LinkedHashSet<>(Global.getSector().getAllEmptyVariantIds());
         for (FleetMemberAPI tmp : target.getMembersListCopy())
         {
             if (!tmp.isFighterWing() && tmp.getVariant().isEmptyHullVariant())
             {
-                ids.remove(tmp.getVariant().getHullVariantId());
+                missing.remove(tmp.getVariant().getHullVariantId());
             }
         }
 
-        for (String id : ids)
-        {
-            FleetMemberAPI tmp = Global.getFactory().createFleetMember(
-                    FleetMemberType.SHIP, id);
-            tmp.getRepairTracker().setMothballed(true);
-            target.addFleetMember(tmp);
-            total++;
-        }
+        ids = new ArrayList<>(missing);
+        return CommandResult.SUCCESS;
+    }
 
+    @Override
+    protected int getTotalWork()
+    {
+        return ids.size();
+    }
+
+    @Override
+    protected void doWork(int unit)
+    {
+        FleetMemberAPI tmp = Global.getFactory().createFleetMember(
+                FleetMemberType.SHIP, ids.get(unit));
+        tmp.getRepairTracker().setMothballed(true);
+        target.addFleetMember(tmp);
+        total++;
+    }
+
+    @Override
+    protected void finish(boolean wasCancelled)
+    {
         Console.showMessage("Added " + total + " ships to " + targetName + ".");
-        return CommandResult.SUCCESS;
     }
 }
@@ -4,19 +4,24 @@ import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.campaign.CargoAPI;
 import com.fs.starfarer.api.campaign.CargoAPI.CargoItemType;
 import com.fs.starfarer.api.campaign.SectorEntityToken;
-import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
 
-public class AllWeapons implements BaseCommand
+import java.util.ArrayList;
+import java.util.List;
+
+public class AllWeapons extends IncrementalCommand
 {
     private static final int MAX_STACK_SIZE = 1_000;
+    private List<String> ids;
+    private CargoAPI target;
+    private String targetName;
+    private int total = 0;
 
     @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    protected CommandResult begin(String args, CommandContext context)
     {
         if (!context.isInCampaign())
         {
@@ -24,10 +29,6 @@ public class AllWeapons implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        CargoAPI target;
-        String targetName;
-        int total = 0;
-
         if (args == null || args.isEmpty())
         {
             target = Storage.retrieveStorage();
@@ -53,14 +54,28 @@ public class AllWeapons implements BaseCommand
             targetName = tmp.getFullName();
         }
 
-        for (String id : Global.getSector().getAllWeaponIds())
-        {
-            int amount = MAX_STACK_SIZE - target.getNumWeapons(id);
-            target.addItems(CargoItemType.WEAPONS, id, amount);
-            total += amount;
-        }
+        ids = new ArrayList<>(Global.getSector().getAllWeaponIds());
+        return CommandResult.SUCCESS;
+    }
 
+    @Override
+    protected int getTotalWork()
+    {
+        return ids.size();
+    }
+
+    @Override
+    protected void doWork(int unit)
+    {
+        final String id = ids.get(unit);
+        int amount = MAX_STACK_SIZE - target.getNumWeapons(id);
+        target.addItems(CargoItemType.WEAPONS, id, amount);
+        total += amount;
+    }
+
+    @Override
+    protected void finish(boolean wasCancelled)
+    {
         Console.showMessage("Added " + total + " weapons to " + targetName + ".");
-        return CommandResult.SUCCESS;
     }
 }
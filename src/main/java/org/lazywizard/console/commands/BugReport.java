@@ -2,6 +2,7 @@ package org.lazywizard.console.commands;
 
 import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.ModSpecAPI;
+import org.jetbrains.annotations.Nullable;
 import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.Console;
 
@@ -14,18 +15,20 @@ import static org.lazywizard.console.ext.SystemInfo.*;
 
 public class BugReport implements BaseCommand
 {
-    @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    // None of this can change without restarting the game, so it's only gathered once per session
+    // Memory usage is always current, so this command isn't a ReadOnlyCommand
+    @Nullable private static String systemInfo = null, otherInfo = null;
+
+    private static void gatherInfo()
     {
-        final StringBuilder modData = new StringBuilder(1024);
         // All of these methods can be found in BugReportExt.kt and its subfiles
-        modData.append(" System info:\n---------------\n")
-                .append(getGameVersionString())
-                .append(getDisplayString())
-                .append(getPlatformString())
-                .append(getRAMString())
-                .append(getLaunchArgsString());
+        final String system = " System info:\n---------------\n"
+                + getGameVersionString()
+                + getDisplayString()
+                + getPlatformString();
 
+        final StringBuilder modData = new StringBuilder(1024);
+        modData.append(getLaunchArgsString());
         modData.append("\n Graphics card info:\n---------------------\n").append(getGPUString());
 
         modData.append("\n Active mod list:\n------------------\n");
@@ -82,7 +85,20 @@ public class BugReport implements BaseCommand
             }
         }
 
-        final String modDataString = modData.toString();
+        // Set last, as systemInfo is what's checked to see if this has been done
+        otherInfo = modData.toString();
+        systemInfo = system;
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (systemInfo == null)
+        {
+            gatherInfo();
+        }
+
+        final String modDataString = systemInfo + getRAMString() + otherInfo;
         Console.showMessage(modDataString);
 
         final StringSelection copiedData = new StringSelection(modDataString);
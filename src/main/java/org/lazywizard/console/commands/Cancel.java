@@ -0,0 +1,30 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
+
+import java.util.List;
+
+public class Cancel implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final List<IncrementalCommand> running = IncrementalCommand.getRunning();
+        if (running.isEmpty())
+        {
+            Console.showMessage("No commands are running in the background.");
+            return CommandResult.SUCCESS;
+        }
+
+        IncrementalCommand.cancelAll();
+        Console.showMessage("Cancelled " + running.size() + " background commands.");
+        return CommandResult.SUCCESS;
+    }
+}
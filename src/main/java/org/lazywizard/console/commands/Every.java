@@ -0,0 +1,12 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+
+public class Every implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        return Schedule.schedule(args, context, true);
+    }
+}
@@ -0,0 +1,34 @@
+package org.lazywizard.console.commands;
+
+import org.apache.log4j.Level;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandScript;
+import org.lazywizard.console.CommonStrings;
+import org.lazywizard.console.Console;
+
+/**
+ * Runs a command script, either one of the player's own from {@link CommonStrings#PATH_COMMON_SCRIPTS} or one
+ * bundled with a mod in {@link CommonStrings#PATH_SCRIPTS}.
+ */
+public class Exec implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final CommandScript script = CommandScript.load(args, false);
+        if (script == null)
+        {
+            Console.showMessage("No script named \"" + args + "\" was found! Scripts are loaded from "
+                    + CommonStrings.PATH_COMMON_SCRIPTS + " in Starsector's common data folder, or from "
+                    + CommonStrings.PATH_SCRIPTS + " in any enabled mod.", Level.ERROR);
+            return CommandResult.ERROR;
+        }
+
+        return script.run(context);
+    }
+}
@@ -54,7 +54,7 @@ public class FindItem implements BaseCommand
         {
             Console.showMessage("No weapons, LPCs or commodities found with id '"
                     + args + "'.\nUse \"list commodities\", \"list wings\" or \"list weapons\""
-                    + " to show all valid options.");
+                    + " to show all valid options." + CommandUtils.getSuggestions(args, allWeps, allWings, allItems));
             return CommandResult.ERROR;
         }
 
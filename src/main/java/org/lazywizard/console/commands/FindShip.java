@@ -52,7 +52,8 @@ public class FindShip implements BaseCommand
             }
 
             Console.showMessage("No hull found with base id '" + args
-                    + "'!\nUse \"list hulls\" to show all valid options.");
+                    + "'!\nUse \"list hulls\" to show all valid options."
+                    + CommandUtils.getSuggestions(args + "_Hull", Global.getSector().getAllEmptyVariantIds()));
             return CommandResult.ERROR;
         }
 
@@ -5,14 +5,19 @@ import com.fs.starfarer.api.campaign.econ.MarketAPI;
 import com.fs.starfarer.api.campaign.econ.SubmarketAPI;
 import com.fs.starfarer.api.impl.campaign.ids.Submarkets;
 import com.fs.starfarer.api.impl.campaign.submarkets.BaseSubmarketPlugin;
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
 
-public class ForceMarketUpdate implements BaseCommand
+import java.util.List;
+
+public class ForceMarketUpdate extends IncrementalCommand
 {
+    private List<MarketAPI> markets;
+    private int totalMarkets = 0, totalSubmarkets = 0, failedSubmarkets = 0;
+
     @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    protected CommandResult begin(String args, CommandContext context)
     {
         if (!context.isInCampaign())
         {
@@ -20,45 +25,58 @@ public class ForceMarketUpdate implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        int totalMarkets = 0, totalSubmarkets = 0, failedSubmarkets = 0;
-        for (MarketAPI market : Global.getSector().getEconomy().getMarketsCopy())
+        markets = Global.getSector().getEconomy().getMarketsCopy();
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    protected int getTotalWork()
+    {
+        return markets.size();
+    }
+
+    @Override
+    protected void doWork(int unit)
+    {
+        final MarketAPI market = markets.get(unit);
+        totalMarkets++;
+        for (SubmarketAPI submarket : market.getSubmarketsCopy())
         {
-            totalMarkets++;
-            for (SubmarketAPI submarket : market.getSubmarketsCopy())
+            // Ignore storage tabs
+            if (Submarkets.SUBMARKET_STORAGE.equals(submarket.getSpec().getId()))
             {
-                // Ignore storage tabs
-                if (Submarkets.SUBMARKET_STORAGE.equals(submarket.getSpec().getId()))
+                continue;
+            }
+
+            // Only update submarkets that implement BaseSubmarketPlugin (guaranteed to have the proper fields)
+            if (submarket.getPlugin() instanceof BaseSubmarketPlugin)
+            {
+                try
                 {
-                    continue;
+                    final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
+                    plugin.setSinceSWUpdate(plugin.getMinSWUpdateInterval() + 1f);
+                    plugin.setSinceLastCargoUpdate(plugin.getMinSWUpdateInterval() + 1f);
+                    plugin.updateCargoPrePlayerInteraction();
+                    plugin.setSinceSWUpdate(0f);
+                    plugin.setSinceLastCargoUpdate(0f);
+                    totalSubmarkets++;
                 }
-
-                // Only update submarkets that implement BaseSubmarketPlugin (guaranteed to have the proper fields)
-                if (submarket.getPlugin() instanceof BaseSubmarketPlugin)
+                catch (Exception ex)
                 {
-                    try
-                    {
-                        final BaseSubmarketPlugin plugin = (BaseSubmarketPlugin) submarket.getPlugin();
-                        plugin.setSinceSWUpdate(plugin.getMinSWUpdateInterval() + 1f);
-                        plugin.setSinceLastCargoUpdate(plugin.getMinSWUpdateInterval() + 1f);
-                        plugin.updateCargoPrePlayerInteraction();
-                        plugin.setSinceSWUpdate(0f);
-                        plugin.setSinceLastCargoUpdate(0f);
-                        totalSubmarkets++;
-                    }
-                    catch (Exception ex)
-                    {
-                        Console.showException("Failed to update submarket '" + submarket.getName() + "' (" +
-                                submarket.getSpecId() + ") in market '" + market.getName() + "' (" +
-                                market.getId() + "): ", ex);
-                        failedSubmarkets++;
-                    }
+                    Console.showException("Failed to update submarket '" + submarket.getName() + "' (" +
+                            submarket.getSpecId() + ") in market '" + market.getName() + "' (" +
+                            market.getId() + "): ", ex);
+                    failedSubmarkets++;
                 }
             }
         }
+    }
 
+    @Override
+    protected void finish(boolean wasCancelled)
+    {
         Console.showMessage("Updated inventory for " + totalSubmarkets
                 + " submarkets in " + totalMarkets + " markets." + (failedSubmarkets > 0 ?
                 " " + failedSubmarkets + " submarkets failed to update." : ""));
-        return CommandResult.SUCCESS;
     }
 }
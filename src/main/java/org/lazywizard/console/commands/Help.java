@@ -1,24 +1,28 @@
 package org.lazywizard.console.commands;
 
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandStore.StoredCommand;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ReadOnlyCommand;
 import org.lazywizard.lazylib.CollectionUtils;
 
-import java.util.Collections;
 import java.util.List;
 
-public class Help implements BaseCommand
+public class Help implements ReadOnlyCommand
 {
+    @Override
+    public boolean isOutputCacheable(String args, CommandContext context)
+    {
+        return true;
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
         if (args.isEmpty() || args.equalsIgnoreCase("all"))
         {
-            List<String> commands = (args.isEmpty() ? CommandStore.getApplicableCommands(context)
+            final List<String> commands = (args.isEmpty() ? CommandStore.getApplicableCommands(context)
                     : CommandStore.getLoadedCommands());
-            Collections.sort(commands, String.CASE_INSENSITIVE_ORDER);
             Console.showMessage((args.isEmpty() ? "Applicable commands for context " + context.name()
                     + " (use \"help all\" for a full list):\n" : "Loaded commands:\n")
                     + CollectionUtils.implode(commands));
@@ -29,22 +33,34 @@ public class Help implements BaseCommand
                     " You can also input a newline with shift+enter to break your command into multiple lines.");
             Console.showMessage("\nYou can use 'help <command>' for more information"
                     + " on a specific command or 'help <tag>' to only list"
-                    + " commands that have that tag. Console settings can be changed with the 'Settings' command.");
-            List<String> tags = CommandStore.getKnownTags();
-            Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
-            Console.showMessage("\nValid tags: " + CollectionUtils.implode(tags));
+                    + " commands that have that tag. Use 'help search <words>' to find commands by what they"
+                    + " do. Console settings can be changed with the 'Settings' command.");
+            Console.showMessage("\nValid tags: " + CollectionUtils.implode(CommandStore.getKnownTags()));
             return CommandResult.SUCCESS;
         }
         else
         {
             args = args.toLowerCase();
 
+            if (args.startsWith("search "))
+            {
+                final String query = args.substring("search ".length()).trim();
+                final List<String> found = CommandStore.searchCommands(query);
+                if (found.isEmpty())
+                {
+                    Console.showMessage("No commands found matching '" + query + "'.");
+                    return CommandResult.SUCCESS;
+                }
+
+                Console.showMessage("Commands matching '" + query + "', best matches first:\n"
+                        + CollectionUtils.implode(found));
+                return CommandResult.SUCCESS;
+            }
+
             if (CommandStore.getKnownTags().contains(args))
             {
-                List<String> commands = CommandStore.getCommandsWithTag(args);
-                Collections.sort(commands, String.CASE_INSENSITIVE_ORDER);
                 Console.showMessage("Commands with tag '" + args + "':\n"
-                        + CollectionUtils.implode(commands));
+                        + CollectionUtils.implode(CommandStore.getCommandsWithTag(args)));
                 return CommandResult.SUCCESS;
             }
 
@@ -16,16 +16,16 @@ import com.fs.starfarer.api.loading.IndustrySpecAPI;
 import com.fs.starfarer.api.util.Pair;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ReadOnlyCommand;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.lang.ref.SoftReference;
 import java.util.*;
 
-public class List_ implements BaseCommand
+public class List_ implements ReadOnlyCommand
 {
     private static SoftReference<List<Pair<String, String>>> conditionCache = new SoftReference<>(null);
     private static SoftReference<Set<String>> submarketCache = new SoftReference<>(null);
@@ -112,6 +112,14 @@ public class List_ implements BaseCommand
         Console.showMessage("Error: the argument '" + param + "' is campaign-only.");
     }
 
+    @Override
+    public boolean isOutputCacheable(String args, CommandContext context)
+    {
+        // Everything else depends on the state of the sector
+        final String param = args.split(" ", 2)[0].toLowerCase();
+        return "commands".equals(param) || "tags".equals(param) || "aliases".equals(param) || "mods".equals(param);
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -201,12 +209,9 @@ public class List_ implements BaseCommand
             case "tags":
                 newLinePerItem = true;
                 ids = new ArrayList<>();
-                final List<String> tags = CommandStore.getKnownTags();
-                Collections.sort(tags, String.CASE_INSENSITIVE_ORDER);
-                for (String tag : tags)
+                for (String tag : CommandStore.getKnownTags())
                 {
                     final List<String> commandsWithTag = CommandStore.getCommandsWithTag(tag);
-                    Collections.sort(commandsWithTag, String.CASE_INSENSITIVE_ORDER);
 
                     // Multi-indent is slightly more complicated to avoid word-wrapping issues
                     ids.add(tag + " (" + commandsWithTag.size() + "):\n" + CommandUtils.indent(
@@ -6,9 +6,9 @@ import com.fs.starfarer.api.ModSpecAPI;
 import org.apache.log4j.Logger;
 import org.json.JSONArray;
 import org.json.JSONObject;
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ReadOnlyCommand;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.util.ArrayList;
@@ -17,7 +17,7 @@ import java.util.Collections;
 import java.util.List;
 
 // TODO: A lot of these static methods should be moved to LazyLib's ModUtils
-public class ModInfo implements BaseCommand
+public class ModInfo implements ReadOnlyCommand
 {
     private static final Logger Log = Global.getLogger(ModInfo.class);
 
@@ -183,6 +183,12 @@ public class ModInfo implements BaseCommand
         return sb.toString();
     }
 
+    @Override
+    public boolean isOutputCacheable(String args, CommandContext context)
+    {
+        return true;
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -4,16 +4,21 @@ import com.fs.starfarer.api.Global;
 import com.fs.starfarer.api.combat.CombatEngineAPI;
 import com.fs.starfarer.api.combat.ShipAPI;
 import com.fs.starfarer.api.mission.FleetSide;
-import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.BaseCommand.CommandContext;
-import org.lazywizard.console.BaseCommand.CommandResult;
 import org.lazywizard.console.CommonStrings;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.IncrementalCommand;
 
-public class Nuke implements BaseCommand
+import java.util.ArrayList;
+import java.util.List;
+
+public class Nuke extends IncrementalCommand
 {
+    private final List<ShipAPI> targets = new ArrayList<>();
+    private CombatEngineAPI engine;
+    private int total = 0;
+
     @Override
-    public CommandResult runCommand(String args, CommandContext context)
+    protected CommandResult begin(String args, CommandContext context)
     {
         if (!context.isInCombat())
         {
@@ -21,7 +26,7 @@ public class Nuke implements BaseCommand
             return CommandResult.WRONG_CONTEXT;
         }
 
-        CombatEngineAPI engine = Global.getCombatEngine();
+        engine = Global.getCombatEngine();
         for (ShipAPI ship : engine.getShips())
         {
             if (ship.isHulk() || ship.isShuttlePod())
@@ -31,11 +36,36 @@ public class Nuke implements BaseCommand
 
             if (ship.getOwner() == FleetSide.ENEMY.ordinal())
             {
-                Kill.killShip(ship, true);
+                targets.add(ship);
             }
         }
 
-        Console.showMessage("All enemy ships destroyed.");
         return CommandResult.SUCCESS;
     }
+
+    @Override
+    protected int getTotalWork()
+    {
+        return targets.size();
+    }
+
+    @Override
+    protected void doWork(int unit)
+    {
+        // Ships may have died or left the battle since the command was entered
+        final ShipAPI ship = targets.get(unit);
+        if (Global.getCombatEngine() != engine || ship.isHulk() || !engine.isEntityInPlay(ship))
+        {
+            return;
+        }
+
+        Kill.killShip(ship, true);
+        total++;
+    }
+
+    @Override
+    protected void finish(boolean wasCancelled)
+    {
+        Console.showMessage(wasCancelled ? "Destroyed " + total + " enemy ships." : "All enemy ships destroyed.");
+    }
 }
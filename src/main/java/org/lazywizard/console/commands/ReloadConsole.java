@@ -2,8 +2,8 @@ package org.lazywizard.console.commands;
 
 import org.json.JSONException;
 import org.lazywizard.console.BaseCommand;
-import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ConsoleLoader;
 import org.lazywizard.lazylib.ui.FontException;
 
 import java.io.IOException;
@@ -12,10 +12,8 @@ public class ReloadConsole implements BaseCommand
 {
     public static void reloadConsole() throws JSONException, IOException, FontException
     {
-        Console.reloadSettings();
-        CommandStore.reloadAll();
-        RunCode.reloadImports();
-        RunCode.reloadMacros();
+        // Same loading as on startup, but waits for everything to finish
+        ConsoleLoader.reload();
     }
 
     @Override
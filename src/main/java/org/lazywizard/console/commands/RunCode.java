@@ -5,6 +5,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import com.fs.starfarer.api.Global;
@@ -21,7 +22,7 @@ import org.lazywizard.console.Console;
 
 public class RunCode implements BaseCommand
 {
-    private static Map<String, String> macros;
+    private static volatile Map<String, String> macros = Collections.emptyMap();
     private static ScriptEvaluator eval;
 
     public static Map<String, String> getMacros()
@@ -30,6 +31,37 @@ public class RunCode implements BaseCommand
     }
 
     public static void reloadImports()
+    {
+        List<String> imports;
+        try
+        {
+            imports = loadImports();
+        }
+        catch (IOException | JSONException ex)
+        {
+            Console.showException("Failed to load RunCode imports: ", ex);
+            imports = Collections.emptyList();
+        }
+
+        setDefaultImports(imports);
+    }
+
+    // Only reads the CSV, so this is safe to call from a background thread
+    public static List<String> loadImports() throws IOException, JSONException
+    {
+        final List<String> imports = new ArrayList<>();
+        JSONArray csv = Global.getSettings().getMergedSpreadsheetDataForMod(
+                "import", CommonStrings.PATH_RUNCODE_CSV, CommonStrings.MOD_ID);
+        for (int x = 0; x < csv.length(); x++)
+        {
+            imports.add(csv.getJSONObject(x).getString("import"));
+        }
+
+        return imports;
+    }
+
+    // Creates the compiler, so this should be called from the main thread
+    public static void setDefaultImports(List<String> imports)
     {
         eval = new ScriptEvaluator();
         eval.setReturnType(void.class);
@@ -38,55 +70,59 @@ public class RunCode implements BaseCommand
         {
             Exception.class
         });
+        eval.setDefaultImports(imports.toArray(new String[imports.size()]));
+    }
 
-        List<String> imports = new ArrayList<>();
-
+    public static void reloadMacros()
+    {
+        Map<String, String> loaded;
         try
         {
-            JSONArray csv = Global.getSettings().getMergedSpreadsheetDataForMod(
-                    "import", CommonStrings.PATH_RUNCODE_CSV, CommonStrings.MOD_ID);
-            for (int x = 0; x < csv.length(); x++)
-            {
-                imports.add(csv.getJSONObject(x).getString("import"));
-            }
+            loaded = loadMacros();
         }
         catch (IOException | JSONException ex)
         {
-            Console.showException("Failed to load RunCode imports: ", ex);
-            return;
+            Console.showException("Failed to load RunCode macros: ", ex);
+            loaded = Collections.emptyMap();
         }
 
-        eval.setDefaultImports(imports.toArray(new String[imports.size()]));
+        setMacros(loaded);
     }
 
-    public static void reloadMacros()
+    // Only reads the CSV, so this is safe to call from a background thread
+    public static Map<String, String> loadMacros() throws IOException, JSONException
     {
-        macros = new HashMap<>();
+        final Map<String, String> macros = new LinkedHashMap<>();
+        JSONArray csv = Global.getSettings().getMergedSpreadsheetDataForMod(
+                "macro", CommonStrings.PATH_RUNCODE_MACROS, CommonStrings.MOD_ID);
+        for (int x = 0; x < csv.length(); x++)
+        {
+            final JSONObject tmp = csv.getJSONObject(x);
+            macros.put(tmp.getString("macro"), tmp.getString("replace"));
+        }
 
-        try
+        return macros;
+    }
+
+    // Reports invalid macros to the player, so this should be called from the main thread
+    public static void setMacros(Map<String, String> loaded)
+    {
+        final Map<String, String> macros = new HashMap<>();
+        for (Map.Entry<String, String> entry : loaded.entrySet())
         {
-            JSONArray csv = Global.getSettings().getMergedSpreadsheetDataForMod(
-                    "macro", CommonStrings.PATH_RUNCODE_MACROS, CommonStrings.MOD_ID);
-            for (int x = 0; x < csv.length(); x++)
+            final String macro = entry.getKey();
+
+            // Validate for $
+            if (!macro.startsWith("$"))
             {
-                final JSONObject tmp = csv.getJSONObject(x);
-                final String macro = tmp.getString("macro"),
-                        replaceWith = tmp.getString("replace");
-
-                // Validate for $
-                if (!macro.startsWith("$"))
-                {
-                    Console.showMessage("Macro \"" + macro + "\" doesn't start with an $!");
-                    continue;
-                }
-
-                macros.put(macro, replaceWith);
+                Console.showMessage("Macro \"" + macro + "\" doesn't start with an $!");
+                continue;
             }
+
+            macros.put(macro, entry.getValue());
         }
-        catch (IOException | JSONException ex)
-        {
-            Console.showException("Failed to load RunCode macros: ", ex);
-        }
+
+        RunCode.macros = macros;
     }
 
     @Override
@@ -0,0 +1,49 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandScheduler;
+import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.Console;
+
+public class Schedule implements BaseCommand
+{
+    // Shared with Every, which is the same command but repeating
+    static CommandResult schedule(String args, CommandContext context, boolean repeat)
+    {
+        final String[] tmp = args.split(" ", 2);
+        if (tmp.length < 2 || !CommandUtils.isFloat(tmp[0]))
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final float seconds = Float.parseFloat(tmp[0]);
+        if (seconds < 0f || (repeat && seconds < 0.05f))
+        {
+            Console.showMessage("Delay must be " + (repeat ? "at least 0.05 seconds!" : "positive!"));
+            return CommandResult.ERROR;
+        }
+
+        // Multiple commands have to be quoted, otherwise they'd be split up before reaching this command
+        String input = tmp[1].trim();
+        if (input.length() > 1 && input.startsWith("\"") && input.endsWith("\""))
+        {
+            input = input.substring(1, input.length() - 1).trim();
+        }
+
+        if (input.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final int id = CommandScheduler.schedule(input, seconds, (repeat ? seconds : 0f), context);
+        Console.showMessage("Scheduled task " + id + ": '" + input + "' will run "
+                + (repeat ? "every " : "in ") + CommandUtils.format(seconds) + " seconds.");
+        return CommandResult.SUCCESS;
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        return schedule(args, context, false);
+    }
+}
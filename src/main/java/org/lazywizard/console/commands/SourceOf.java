@@ -1,15 +1,19 @@
 package org.lazywizard.console.commands;
 
-import java.util.Collections;
-import java.util.List;
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandStore.StoredCommand;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ReadOnlyCommand;
 
 // TODO: Extend to cover ships/weapons/modspecs/commodities/etc
-public class SourceOf implements BaseCommand
+public class SourceOf implements ReadOnlyCommand
 {
+    @Override
+    public boolean isOutputCacheable(String args, CommandContext context)
+    {
+        return "all".equalsIgnoreCase(args);
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -21,9 +25,7 @@ public class SourceOf implements BaseCommand
         if ("all".equalsIgnoreCase(args))
         {
             Console.showMessage("Loaded commands come from the following mods:");
-            List<String> allCommands = CommandStore.getLoadedCommands();
-            Collections.sort(allCommands, String.CASE_INSENSITIVE_ORDER);
-            for (String tmp : allCommands)
+            for (String tmp : CommandStore.getLoadedCommands())
             {
                 StoredCommand command = CommandStore.retrieveCommand(tmp);
                 Console.showMessage(" - "+ tmp + ": " + command.getSource());
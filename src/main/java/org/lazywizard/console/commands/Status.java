@@ -1,15 +1,21 @@
 package org.lazywizard.console.commands;
 
-import org.lazywizard.console.BaseCommand;
 import org.lazywizard.console.CommandStore;
 import org.lazywizard.console.CommandUtils;
 import org.lazywizard.console.Console;
+import org.lazywizard.console.ReadOnlyCommand;
 import org.lazywizard.lazylib.CollectionUtils;
 
 import java.util.*;
 
-public class Status implements BaseCommand
+public class Status implements ReadOnlyCommand
 {
+    @Override
+    public boolean isOutputCacheable(String args, CommandContext context)
+    {
+        return true;
+    }
+
     @Override
     public CommandResult runCommand(String args, CommandContext context)
     {
@@ -23,12 +29,10 @@ public class Status implements BaseCommand
 
         // Commands
         List<String> tmp = CommandStore.getLoadedCommands();
-        Collections.sort(tmp, String.CASE_INSENSITIVE_ORDER);
         commands = "(" + tmp.size() + "):\n" + CommandUtils.indent(CollectionUtils.implode(tmp), 3);
 
         // Tags
         tmp = CommandStore.getKnownTags();
-        Collections.sort(tmp, String.CASE_INSENSITIVE_ORDER);
         tags = "(" + tmp.size() + "):\n" + CommandUtils.indent(CollectionUtils.implode(tmp), 3);
 
         // Command sources
@@ -0,0 +1,75 @@
+package org.lazywizard.console.commands;
+
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandScheduler;
+import org.lazywizard.console.CommandScheduler.ScheduledTask;
+import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.Console;
+
+import java.util.List;
+
+public class Tasks implements BaseCommand
+{
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        final String[] tmp = args.toLowerCase().split(" ");
+        if (args.isEmpty())
+        {
+            final List<ScheduledTask> tasks = CommandScheduler.getTasks();
+            if (tasks.isEmpty())
+            {
+                Console.showMessage("No tasks are scheduled.");
+                return CommandResult.SUCCESS;
+            }
+
+            final StringBuilder sb = new StringBuilder(tasks.size() * 64);
+            for (ScheduledTask task : tasks)
+            {
+                sb.append(task.getId()).append(": '").append(task.getInput()).append("' in ")
+                        .append(CommandUtils.format(task.getTimeUntilNextRun())).append("s");
+                if (task.getInterval() > 0f)
+                {
+                    sb.append(", then every ").append(CommandUtils.format(task.getInterval())).append("s (run ")
+                            .append(task.getTimesRun()).append(" times)");
+                }
+
+                if (!task.canRunIn(context))
+                {
+                    sb.append(" [can't run here]");
+                }
+
+                sb.append('\n');
+            }
+
+            Console.showIndentedMessage("Scheduled tasks:", sb.toString(), 3);
+            return CommandResult.SUCCESS;
+        }
+
+        if (tmp.length != 2 || !"cancel".equals(tmp[0]))
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        if ("all".equals(tmp[1]))
+        {
+            Console.showMessage("Cancelled " + CommandScheduler.cancelAll() + " tasks.");
+            return CommandResult.SUCCESS;
+        }
+
+        if (!CommandUtils.isInteger(tmp[1]))
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        final int id = Integer.parseInt(tmp[1]);
+        if (!CommandScheduler.cancel(id))
+        {
+            Console.showMessage("No task with ID " + id + " exists!");
+            return CommandResult.ERROR;
+        }
+
+        Console.showMessage("Cancelled task " + id + ".");
+        return CommandResult.SUCCESS;
+    }
+}
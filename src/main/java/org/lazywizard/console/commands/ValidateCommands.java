@@ -0,0 +1,102 @@
+package org.lazywizard.console.commands;
+
+import com.fs.starfarer.api.Global;
+import org.apache.log4j.Logger;
+import org.lazywizard.console.BaseCommand;
+import org.lazywizard.console.CommandStore;
+import org.lazywizard.console.CommandStore.StoredCommand;
+import org.lazywizard.console.CommandUtils;
+import org.lazywizard.console.Console;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Loads and checks the class of every registered command. Command classes are normally only loaded the first time a
+ * command is run, so this is the only way to find broken commands.csv rows without running every command.
+ */
+public class ValidateCommands implements BaseCommand
+{
+    private static final Logger Log = Global.getLogger(ValidateCommands.class);
+
+    private static String toMillis(long nanos)
+    {
+        return CommandUtils.format(nanos / 1_000_000f) + "ms";
+    }
+
+    @Override
+    public CommandResult runCommand(String args, CommandContext context)
+    {
+        if (!args.isEmpty())
+        {
+            return CommandResult.BAD_SYNTAX;
+        }
+
+        // Group commands by the mod that added them
+        final Map<String, ModStats> byMod = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        int numCommands = 0, numFailed = 0, numLoaded = 0;
+        long totalTime = 0L;
+        for (StoredCommand command : CommandStore.getAllStoredCommands())
+        {
+            ModStats stats = byMod.get(command.getSource());
+            if (stats == null)
+            {
+                stats = new ModStats();
+                byMod.put(command.getSource(), stats);
+            }
+
+            // Only count time spent loading classes now, not for commands that were already run this session
+            final long previousLoadTime = command.getLoadTime();
+            final Exception ex = command.validate();
+            if (ex != null)
+            {
+                final Throwable cause = (ex.getCause() != null ? ex.getCause() : ex);
+                stats.failures.add(command.getName() + " (class: " + command.getClassName() + "): " + cause);
+                Log.error("Command " + command.getName() + " failed validation", ex);
+                numFailed++;
+            }
+
+            final long loadTime = command.getLoadTime() - previousLoadTime;
+            if (loadTime > 0L)
+            {
+                numLoaded++;
+            }
+
+            stats.numCommands++;
+            stats.loadTime += loadTime;
+            totalTime += loadTime;
+            numCommands++;
+        }
+
+        Console.showMessage("Validated " + numCommands + " commands from " + byMod.size() + " mods ("
+                + numFailed + " failed):");
+        for (Map.Entry<String, ModStats> entry : byMod.entrySet())
+        {
+            final ModStats stats = entry.getValue();
+            Console.showMessage(" - " + entry.getKey() + ": " + stats.numCommands + " commands, "
+                    + toMillis(stats.loadTime) + (stats.failures.isEmpty() ? ""
+                    : ", " + stats.failures.size() + " failed:"));
+            Collections.sort(stats.failures, String.CASE_INSENSITIVE_ORDER);
+            for (String failure : stats.failures)
+            {
+                Console.showMessage("    - " + failure);
+            }
+        }
+
+        final String summary = "Loading the " + numLoaded + " command classes that hadn't been used yet took "
+                + toMillis(totalTime) + ", time that was saved at startup by loading command classes on first use.";
+        Console.showMessage(summary);
+        Log.info(summary);
+        return (numFailed > 0 ? CommandResult.ERROR : CommandResult.SUCCESS);
+    }
+
+    private static class ModStats
+    {
+        private final List<String> failures = new ArrayList<>();
+        private int numCommands = 0;
+        private long loadTime = 0L;
+    }
+}
@@ -0,0 +1,141 @@
+package org.lazywizard.console
+
+import org.lwjgl.BufferUtils
+import org.lwjgl.opengl.GL11.*
+import org.lwjgl.opengl.GL12.GL_CLAMP_TO_EDGE
+import org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL
+import org.lwjgl.opengl.GL15.*
+import org.lwjgl.opengl.GL21.GL_PIXEL_PACK_BUFFER
+import org.lwjgl.opengl.GL30.*
+import org.lwjgl.opengl.GLContext
+import java.nio.ByteBuffer
+
+/**
+ * Copies the screen into a texture for the console overlay's background, scaled down to a fraction of the screen's
+ * size. It's kept with the overlay between uses, so the texture and any buffers are only created once per resolution.
+ *
+ * Where framebuffer blits are supported the copy never leaves the GPU. Otherwise the screen is read back and scaled
+ * down by skipping pixels. If pixel buffer objects are supported, the read happens in the background while the
+ * overlay's first frame is being prepared.
+ */
+internal class BackgroundCapture(private val screenWidth: Int, private val screenHeight: Int, scale: Float) {
+    val width = Math.max(1, Math.round(screenWidth * scale))
+    val height = Math.max(1, Math.round(screenHeight * scale))
+    val textureId = glGenTextures()
+    private var framebufferId = 0
+    private var pixelBufferId = 0
+    // Only used when the screen has to be read back; readBuffer only when pixel buffer objects aren't supported
+    private var pixels: ByteBuffer? = null
+    private var readBuffer: ByteBuffer? = null
+    private var isPending = false
+
+    init {
+        // Only one level is ever created, so don't let OpenGL look for mipmaps
+        glBindTexture(GL_TEXTURE_2D, textureId)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 0)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_S, GL_CLAMP_TO_EDGE)
+        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_WRAP_T, GL_CLAMP_TO_EDGE)
+        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGB8, width, height, 0, GL_RGB, GL_UNSIGNED_BYTE, null as ByteBuffer?)
+
+        val caps = GLContext.getCapabilities()
+        if (caps.OpenGL30) {
+            framebufferId = glGenFramebuffers()
+            val previous = glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING)
+            glBindFramebuffer(GL_DRAW_FRAMEBUFFER, framebufferId)
+            glFramebufferTexture2D(GL_DRAW_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureId, 0)
+            val status = glCheckFramebufferStatus(GL_DRAW_FRAMEBUFFER)
+            glBindFramebuffer(GL_DRAW_FRAMEBUFFER, previous)
+            if (status != GL_FRAMEBUFFER_COMPLETE) {
+                glDeleteFramebuffers(framebufferId)
+                framebufferId = 0
+            }
+        }
+
+        if (framebufferId == 0) {
+            pixels = BufferUtils.createByteBuffer(width * height * 3)
+            if (caps.OpenGL21) {
+                pixelBufferId = glGenBuffers()
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBufferId)
+                glBufferData(GL_PIXEL_PACK_BUFFER, screenWidth * screenHeight * 3L, GL_STREAM_READ)
+                glBindBuffer(GL_PIXEL_PACK_BUFFER, 0)
+            } else {
+                readBuffer = BufferUtils.createByteBuffer(screenWidth * screenHeight * 3)
+            }
+        }
+    }
+
+    /** Starts copying the screen. Must be called before anything else is drawn to it. */
+    fun begin() {
+        if (framebufferId != 0) {
+            // Reads from whatever the game last drew to, same as glReadPixels would
+            val previous = glGetInteger(GL_DRAW_FRAMEBUFFER_BINDING)
+            glBindFramebuffer(GL_DRAW_FRAMEBUFFER, framebufferId)
+            glBlitFramebuffer(0, 0, screenWidth, screenHeight, 0, 0, width, height, GL_COLOR_BUFFER_BIT, GL_LINEAR)
+            glBindFramebuffer(GL_DRAW_FRAMEBUFFER, previous)
+            return
+        }
+
+        // Rows of RGB pixels aren't always a multiple of four bytes long
+        glPushClientAttrib(GL_CLIENT_PIXEL_STORE_BIT)
+        glPixelStorei(GL_PACK_ALIGNMENT, 1)
+        if (pixelBufferId != 0) {
+            // Returns without waiting for the copy to finish
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBufferId)
+            glReadPixels(0, 0, screenWidth, screenHeight, GL_RGB, GL_UNSIGNED_BYTE, 0L)
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0)
+        } else {
+            glReadPixels(0, 0, screenWidth, screenHeight, GL_RGB, GL_UNSIGNED_BYTE, readBuffer!!)
+        }
+
+        glPopClientAttrib()
+        isPending = true
+    }
+
+    /** Finishes the copy started by [begin], if it needs finishing. Must be called before the texture is drawn. */
+    fun finish() {
+        if (!isPending) return
+        isPending = false
+
+        if (pixelBufferId != 0) {
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, pixelBufferId)
+            val mapped = glMapBuffer(GL_PIXEL_PACK_BUFFER, GL_READ_ONLY, screenWidth * screenHeight * 3L, null)
+            if (mapped != null) {
+                downscale(mapped)
+                glUnmapBuffer(GL_PIXEL_PACK_BUFFER)
+            }
+
+            glBindBuffer(GL_PIXEL_PACK_BUFFER, 0)
+        } else {
+            downscale(readBuffer!!)
+        }
+
+        glPushClientAttrib(GL_CLIENT_PIXEL_STORE_BIT)
+        glPixelStorei(GL_UNPACK_ALIGNMENT, 1)
+        glBindTexture(GL_TEXTURE_2D, textureId)
+        glTexSubImage2D(GL_TEXTURE_2D, 0, 0, 0, width, height, GL_RGB, GL_UNSIGNED_BYTE, pixels!!)
+        glPopClientAttrib()
+    }
+
+    // Nearest neighbor; the background is drawn too dark for the lost detail to be noticeable
+    private fun downscale(source: ByteBuffer) {
+        val dest = pixels!!
+        dest.clear()
+        for (y in 0 until height) {
+            val rowStart = (y * screenHeight / height) * screenWidth
+            for (x in 0 until width) {
+                val index = (rowStart + x * screenWidth / width) * 3
+                dest.put(source.get(index)).put(source.get(index + 1)).put(source.get(index + 2))
+            }
+        }
+
+        dest.flip()
+    }
+
+    fun dispose() {
+        glDeleteTextures(textureId)
+        if (framebufferId != 0) glDeleteFramebuffers(framebufferId)
+        if (pixelBufferId != 0) glDeleteBuffers(pixelBufferId)
+    }
+}
@@ -13,55 +13,65 @@ import org.lazywizard.console.BaseCommand.CommandContext
 import org.lazywizard.console.ext.GPUInfo
 import org.lazywizard.console.ext.getGPUInfo
 import org.lazywizard.lazylib.opengl.ColorUtils.glColor
-import org.lwjgl.BufferUtils
 import org.lwjgl.Sys
 import org.lwjgl.input.Keyboard
 import org.lwjgl.input.Mouse
 import org.lwjgl.opengl.Display
 import org.lwjgl.opengl.GL11.*
-import org.lwjgl.opengl.GL12.GL_TEXTURE_BASE_LEVEL
-import org.lwjgl.opengl.GL12.GL_TEXTURE_MAX_LEVEL
 import org.lwjgl.opengl.GL13.GL_TEXTURE0
 import org.lwjgl.opengl.GL13.glActiveTexture
 import org.lwjgl.opengl.GL30.GL_INVALID_FRAMEBUFFER_OPERATION
-import org.lwjgl.opengl.GL30.glGenerateMipmap
 import java.awt.Color
 import java.lang.management.ManagementFactory
 import java.lang.management.MemoryUsage
 import java.text.DecimalFormat
 
 private val Log = Global.getLogger(Console::class.java)
-private var history = ""
+private val history = ScrollbackBuffer()
 private const val CURSOR_BLINK_SPEED = 0.7f
+private const val ACTIVE_FRAMERATE = 40
+private const val IDLE_FRAMERATE = 15 // While nothing on screen is changing, only check for input this often
 internal const val HORIZONTAL_MARGIN = 30f // Don't go below 30; TODO: scale minor UI elements using this setting
 private var overlay: ConsoleOverlayInternal? = null
-
-fun show(context: CommandContext) = with(
-    ConsoleOverlayInternal(
-        context,
-        Console.getSettings().outputColor, Console.getSettings().outputColor.darker()
-    )
-)
-{
-    try {
-        overlay = this
-        show()
-    } catch (ex: Exception) {
-        Console.showException("The console overlay encountered an error and was destroyed: ", ex)
-        Log.error("Scrollback at time of destruction:\n\n$history\n\n -- END SCROLLBACK --\n")
-        history = ""
-    } finally {
-        overlay = null
-        dispose()
+// The overlay is kept after it's closed and reused next time, unless the screen, font or settings have changed
+private var cachedOverlay: ConsoleOverlayInternal? = null
+// The GPU can't change while the game is running, so its vendor only needs to be checked once
+private val gpuInfo by lazy { getGPUInfo() }
+
+fun show(context: CommandContext) {
+    val openStartTime = System.nanoTime()
+    with(getOverlay())
+    {
+        try {
+            // Make sure background loading has finished before the overlay needs any commands
+            ConsoleLoader.ensureLoaded()
+            overlay = this
+            show(context, openStartTime)
+        } catch (ex: Exception) {
+            Console.showException("The console overlay encountered an error and was destroyed: ", ex)
+            Log.error("Scrollback at time of destruction:\n\n$history\n\n -- END SCROLLBACK --\n")
+            history.clear()
+            cachedOverlay = null
+            dispose()
+        } finally {
+            overlay = null
+        }
     }
 }
 
+private fun getOverlay(): ConsoleOverlayInternal {
+    cachedOverlay?.let { if (it.isValid()) return it else it.dispose() }
+
+    val settings = Console.getSettings()
+    return ConsoleOverlayInternal(settings.outputColor, settings.outputColor.darker()).also { cachedOverlay = it }
+}
+
 fun clear() {
     overlay?.clear()
 }
 
 internal fun addToHistory(toAdd: String) {
-    history += toAdd
+    history.append(toAdd)
 }
 
 internal fun getErrorString(err: Int) = when (err) {
@@ -81,13 +91,11 @@ internal fun getErrorString(err: Int) = when (err) {
 
 // TODO: This uses a lot of hardcoded numbers; need to refactor these into constants at some point
 // TODO: Move UI element instantiation into initializer to make size/position details clearer
-private class ConsoleOverlayInternal(private val context: CommandContext, mainColor: Color, secondaryColor: Color) :
-    ConsoleListener {
+private class ConsoleOverlayInternal(mainColor: Color, secondaryColor: Color) : ConsoleListener {
     private val settings = Console.getSettings()
-    private val bgTextureId = if (settings.showBackground) glGenTextures() else 0
+    private val settingsVersion = ConsoleSettings.version
     private val byteFormat = DecimalFormat("#,##0.#")
     private val memory = ManagementFactory.getMemoryMXBean()
-    private val gpuInfo = getGPUInfo()
     private val font = Console.getFont()
     private val width = Display.getWidth() * Display.getPixelScaleFactor()
     private val height = Display.getHeight() * Display.getPixelScaleFactor()
@@ -96,8 +104,10 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
     private val maxX = minX + Console.getScrollbackWidth()
     private val minY = 50f + fontSize
     private val maxY = height - 80f
-    private val scrollback =
-        font.createText(text = history.trimStart(), size = fontSize, baseColor = mainColor, maxWidth = maxX - minX)
+    private var background =
+        if (settings.showBackground) BackgroundCapture(width.toInt(), height.toInt(), settings.backgroundScale) else null
+    // Only holds the rows of history currently in view; see updateScrollback()
+    private val scrollback = font.createText(text = "", size = fontSize, baseColor = mainColor, maxWidth = maxX - minX)
     private val query =
         font.createText(text = CommonStrings.INPUT_QUERY, baseColor = secondaryColor, maxWidth = width, maxHeight = 30f)
     private val prompt = font.createText(text = "> ", baseColor = secondaryColor, maxWidth = width, maxHeight = 30f)
@@ -109,26 +119,38 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
     )
     private val ramText = font.createText(text = getRAMText(), baseColor = Color.LIGHT_GRAY)
     private val vramText = font.createText(text = getVRAMText(), baseColor = Color.LIGHT_GRAY)
-    private val curContext = font.createText(text = context.name, baseColor = secondaryColor)
-    private val curTarget = font.createText(text = getCurrentTarget(), baseColor = secondaryColor)
+    private val frameText = font.createText(text = getFrameText(), baseColor = Color.LIGHT_GRAY)
+    private val curContext = font.createText(text = "", baseColor = secondaryColor)
+    private val curTarget = font.createText(text = "", baseColor = secondaryColor)
     private val devMode = font.createText(text = "DEVMODE", baseColor = Color.LIGHT_GRAY)
     private val scrollbar = Scrollbar(10f, secondaryColor, secondaryColor.darker().darker())
     private val currentInput = StringBuilder()
+    private lateinit var context: CommandContext
     private var lastInput: String? = null
-    private var scrollOffset = 0f
-    private var minScroll = 0f
+    // Where the view is scrolled to: the line at the bottom of the view, and how far it extends below the view
+    private var isFollowingOutput = true
+    private var bottomLine = 0L
+    private var bottomOffset = 0f
+    private var viewMinY = minY
+    private var scrollbackY = minY
+    private var needsScrollbackUpdate = true
+    private var shownHistoryVersion = -1
     private var currentIndex = 0
     private var lastIndex = 0
     private var nextBlink = CURSOR_BLINK_SPEED
     private var showCursor = true
     private var needsTextUpdate = true
+    private var needsRedraw = true
+    private var averageFrameTime = 0f // In milliseconds, only counting frames that were drawn
     private var isOpen = false
 
     private inner class Scrollbar(val width: Float, val barColor: Color, val bgColor: Color) {
         fun draw(x: Float, y: Float, height: Float) {
             // Determine size and relative position of scrollbar
-            val contentRatio = (maxY - minY) / scrollback.height
-            val scrollRatio = scrollOffset / minScroll
+            // Lines that haven't been shown yet haven't been wrapped, so these are estimates
+            val contentRatio = (maxY - viewMinY) / (history.estimatedRows * fontSize)
+            val scrollRatio = if (isFollowingOutput) 0f
+            else ((history.endLine - 1 - bottomLine).toFloat() / Math.max(1, history.numLines - 1)).coerceIn(0f, 1f)
 
             // Don't draw the scrollbar if the screen can fit the entire scrollback
             // scrollRatio should never be NaN unless contentRatio is infinity,
@@ -163,7 +185,32 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         }
     }
 
-    fun show() {
+    // Whether this overlay can be shown again, or needs to be rebuilt for a new resolution, font or settings
+    fun isValid() = font === Console.getFont() && fontSize == Console.getFontSize()
+            && width == Display.getWidth() * Display.getPixelScaleFactor()
+            && height == Display.getHeight() * Display.getPixelScaleFactor()
+            && settingsVersion == ConsoleSettings.version
+
+    fun show(context: CommandContext, openStartTime: Long) {
+        // Everything the player could have changed since this overlay was last open starts fresh
+        this.context = context
+        curContext.text = context.name
+        curTarget.text = getCurrentTarget()
+        currentInput.setLength(0)
+        currentIndex = 0
+        lastInput = null
+        lastIndex = 0
+        showCursor = true
+        nextBlink = CURSOR_BLINK_SPEED
+        needsTextUpdate = true
+
+        // History is kept between uses of the overlay; only lay out the visible rows again if it's changed since
+        history.setLayout(font, fontSize, maxX - minX)
+        if (!isFollowingOutput || history.version != shownHistoryVersion) {
+            isFollowingOutput = true
+            needsScrollbackUpdate = true
+        }
+
         // Calculates time elapsed since last frame
         var lastUpdate = Sys.getTime()
         fun calcDelta(): Float {
@@ -174,36 +221,17 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         }
 
         // Save the current screen to a texture, to be used as the overlay background
-        // This texture will be extremely low quality to save VRAM, but since the
-        // background will be drawn darkened, the compression shouldn't be noticeable
-        if (settings.showBackground) {
+        // The texture is scaled down to save VRAM, but since the background
+        // will be drawn darkened, the lost detail shouldn't be noticeable
+        background?.let {
             glGetError() // Clear existing error flag, if any
-            val buffer = BufferUtils.createByteBuffer(width.toInt() * height.toInt() * 3)
-            glReadPixels(0, 0, width.toInt(), height.toInt(), GL_RGB, GL_UNSIGNED_BYTE, buffer)
-            glActiveTexture(GL_TEXTURE0)
-            glBindTexture(GL_TEXTURE_2D, bgTextureId)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_BASE_LEVEL, 0)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAX_LEVEL, 0)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST_MIPMAP_LINEAR)
-            glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST)
-            glGenerateMipmap(GL_TEXTURE_2D)
-            glTexImage2D(
-                GL_TEXTURE_2D,
-                0,
-                GL_R3_G3_B2,
-                width.toInt(),
-                height.toInt(),
-                0,
-                GL_RGB,
-                GL_UNSIGNED_BYTE,
-                buffer
-            )
+            it.begin()
 
             // Fallback in case generating background fails: free memory and disable until manually re-enabled
-            val err = glGetError();
+            val err = glGetError()
             if (err != GL_NO_ERROR) {
-
-                glDeleteTextures(bgTextureId)
+                it.dispose()
+                background = null
                 settings.showBackground = false
                 Console.showMessage("Failed to size buffer for background image! Disabling console background (can be re-enabled with Settings command)...")
                 Console.showMessage("Error id: " + getErrorString(err))
@@ -211,39 +239,65 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         }
 
         // Show overlay until closed by player
+        // The screen is only redrawn when something on it has changed; otherwise input is checked at a lower rate
         isOpen = true
+        needsRedraw = true
         lastUpdate = Sys.getTime()
+        var framesDrawn = 0
+        var framesSkipped = 0
         while (isOpen) {
-            Display.update()
             checkInput()
 
             // Alt+F4 support
             if (Display.isCloseRequested()) System.exit(0)
 
+            val frameStartTime = System.nanoTime()
             advance(calcDelta())
-            render()
-            Display.sync(40)
+            if (needsRedraw || Display.isDirty()) {
+                needsRedraw = false
+                render()
+                val frameTime = (System.nanoTime() - frameStartTime) / 1_000_000f
+                averageFrameTime = if (framesDrawn == 0) frameTime else averageFrameTime * 0.9f + frameTime * 0.1f
+                Display.update()
+                if (framesDrawn == 0) {
+                    val openTime = (System.nanoTime() - openStartTime) / 1_000_000.0
+                    Log.info("Console overlay opened in ${String.format("%.2f", openTime)} ms")
+                }
+
+                framesDrawn++
+                Display.sync(ACTIVE_FRAMERATE)
+            } else {
+                // Background commands still get a full framerate to work with
+                framesSkipped++
+                Display.processMessages()
+                Display.sync(if (IncrementalCommand.isAnyRunning()) ACTIVE_FRAMERATE else IDLE_FRAMERATE)
+            }
         }
 
-        // Clean up background texture (if any) and clear any remaining input events
-        if (settings.showBackground) glDeleteTextures(bgTextureId)
+        Log.debug("Console overlay drew $framesDrawn frames and skipped $framesSkipped, averaging "
+                + "${String.format("%.2f", averageFrameTime)} ms per frame drawn")
+
+        // The background texture is kept for next time; clear any remaining input events
         while (Keyboard.next()) Keyboard.poll()
         while (Mouse.next()) Mouse.poll()
     }
 
     fun clear() {
-        scrollback.text = ""
+        history.clear()
+        isFollowingOutput = true
+        needsScrollbackUpdate = true
     }
 
     fun dispose() {
-        // Clean up native resources, limit memory used by console scrollback history
-        history = scrollback.text.takeLast(ConsoleSettings.maxScrollback)
+        // Clean up native resources
+        background?.dispose()
         scrollback.dispose()
         query.dispose()
         prompt.dispose()
         input.dispose()
         ramText.dispose()
         vramText.dispose()
+        frameText.dispose()
         curContext.dispose()
         curTarget.dispose()
         devMode.dispose()
@@ -253,8 +307,9 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
     override fun showOutput(output: String): Boolean {
         if (!isOpen) return false
 
-        scrollback.append(output)
-        scrollOffset = 0f
+        history.append(output)
+        isFollowingOutput = true
+        needsScrollbackUpdate = true
         return true
     }
 
@@ -293,6 +348,8 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
 
     private fun getVRAMText(): String = "  Free VRAM: ${asString(gpuInfo.getFreeVRAM())}"
 
+    private fun getFrameText(): String = "  Frame time: ${byteFormat.format(averageFrameTime)} ms"
+
     private fun getVRAMColor(usage: GPUInfo): Color = with(usage)
     {
         val remaining = getFreeVRAM()
@@ -311,6 +368,42 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         return ""
     }
 
+    // Checked without copying the command out of the input, as this runs on every tab press
+    private fun hasArguments(startIndex: Int, endIndex: Int): Boolean {
+        for (i in startIndex until endIndex) {
+            val ch = currentInput[i]
+            if (ch == ' ' || ch == '\n') return true
+        }
+
+        return false
+    }
+
+    // Completes the argument under the cursor using the argument types declared in the command's syntax
+    private fun completeArgument(startIndex: Int, endIndex: Int, backwards: Boolean): Boolean {
+        fun isSpace(index: Int) = currentInput[index] == ' ' || currentInput[index] == '\n'
+
+        var commandStart = startIndex
+        while (commandStart < endIndex && isSpace(commandStart)) commandStart++
+        var commandEnd = commandStart
+        while (commandEnd < endIndex && !isSpace(commandEnd)) commandEnd++
+        if (currentIndex <= commandEnd || currentIndex > endIndex) return false
+
+        // Find the argument under the cursor and how many come before it
+        var argStart = currentIndex
+        while (argStart > commandEnd && !isSpace(argStart - 1)) argStart--
+        var argEnd = currentIndex
+        while (argEnd < endIndex && !isSpace(argEnd)) argEnd++
+        var argIndex = 0
+        for (i in commandEnd + 1 until argStart) {
+            if (isSpace(i) && !isSpace(i - 1)) argIndex++
+        }
+
+        val completion = CommandStore.getArgumentCompletion(currentInput.substring(commandStart, commandEnd))
+        val match = completion.complete(argIndex, currentInput, argStart, currentIndex, argEnd, backwards) ?: return false
+        currentInput.replace(argStart, argEnd, match)
+        return true
+    }
+
     private fun checkInput() {
         if (Keyboard.isKeyDown(Keyboard.KEY_ESCAPE)) {
             isOpen = false
@@ -319,7 +412,7 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
 
         // Mouse wheel scrolling
         val scrollY = Mouse.getDWheel()
-        scrollOffset -= scrollY * .2f
+        if (scrollY != 0) scroll(scrollY * .2f)
 
         val ctrlDown = Keyboard.isKeyDown(Keyboard.KEY_LCONTROL) ||
                 Keyboard.isKeyDown(Keyboard.KEY_RCONTROL)
@@ -362,45 +455,22 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                     val startIndex = currentInput.lastIndexOf(settings.commandSeparator, currentIndex) + 1
                     val tmp = currentInput.indexOf(settings.commandSeparator, startIndex)
                     val endIndex = if (tmp < 0) currentInput.length else tmp
-                    val toIndex = currentInput.substring(startIndex, Math.max(startIndex, currentIndex))
-                    val fullCommand = currentInput.substring(startIndex, endIndex)
 
-                    // Only auto-complete if arguments haven't been entered
-                    if (' ' in fullCommand || '\n' in fullCommand) {
-                        currentInput.insert(currentIndex, '\t')
-                        currentIndex++
+                    // Once arguments have been entered, complete the one under the cursor instead
+                    if (hasArguments(startIndex, endIndex)) {
+                        if (!completeArgument(startIndex, endIndex, shiftDown)) {
+                            currentInput.insert(currentIndex, '\t')
+                            currentIndex++
+                        }
+
                         continue
                     }
 
-                    // Cycle through matching commands from current index forward
+                    // Cycle through matching commands from current index forward (backward when shift is held down)
                     // If no further matches are found, start again from beginning
-                    var firstMatch: String? = null
-                    var nextMatch: String? = null
-                    val commands = CommandStore.getApplicableCommands(context)
-                    commands.sort()
-
-                    // Reverse order when shift is held down
-                    if (shiftDown) commands.reverse()
-
-                    for (command in commands) {
-                        if (command.regionMatches(0, toIndex, 0, toIndex.length, true)) {
-                            // Used to cycle back to the beginning when no more matches are found
-                            if (firstMatch == null) firstMatch = command
-
-                            // Found next matching command
-                            if ((shiftDown && command.compareTo(fullCommand, true) < 0)
-                                || (!shiftDown && command.compareTo(fullCommand, true) > 0)
-                            ) {
-                                nextMatch = command
-                                break
-                            }
-                        }
-                    }
-
-                    if (nextMatch != null)
-                        currentInput.replace(startIndex, endIndex, nextMatch)
-                    else if (firstMatch != null)
-                        currentInput.replace(startIndex, endIndex, firstMatch)
+                    val match = CommandStore.getCompletions(context).complete(currentInput, startIndex,
+                        Math.max(startIndex, currentIndex), endIndex, shiftDown)
+                    if (match != null) currentInput.replace(startIndex, endIndex, match)
 
                     continue
                 }
@@ -423,14 +493,15 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                 // PageUp/Down; scroll an entire page at once
                 if (keyPressed == Keyboard.KEY_PRIOR) {
                     if (ctrlDown || shiftDown)
-                        scrollOffset = minScroll
+                        scrollToTop()
                     else
-                        scrollOffset -= height - (80 + fontSize)
+                        scroll(height - (80 + fontSize))
                 } else if (keyPressed == Keyboard.KEY_NEXT) {
-                    if (ctrlDown || shiftDown)
-                        scrollOffset = 0f
-                    else
-                        scrollOffset += height - (80 + fontSize)
+                    if (ctrlDown || shiftDown) {
+                        isFollowingOutput = true
+                        needsScrollbackUpdate = true
+                    } else
+                        scroll(-(height - (80 + fontSize)))
                 }
 
                 // Backspace handling; imitates vanilla text inputs
@@ -464,9 +535,8 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                                 isOpen = false
                                 return
                             }
-                            // TODO: Ensure newlines are supported everywhere (currently replaced with spaces where not supported)
-                            command.startsWith("runcode ", true) -> Console.parseInput(command, context)
-                            else -> Console.parseInput(command.replace('\n', ' '), context)
+                            // Newlines are handled by the lexer (kept for RunCode and Alias, treated as spaces elsewhere)
+                            else -> Console.parseInput(command, context)
                         }
                         currentInput.setLength(0)
                         currentIndex = 0
@@ -517,10 +587,6 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
             needsTextUpdate = true
         }
 
-        // Ensure scrolling can't go beyond the bounds of the displayed text
-        minScroll = (-scrollback.height + (maxY - minY)).coerceAtMost(0f)
-        scrollOffset = scrollOffset.coerceIn(minScroll, 0f)
-
         // Only update our DrawableStrings when there's actually been a change
         if (needsTextUpdate) {
             needsTextUpdate = false
@@ -536,9 +602,121 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
                 ramText.color = getRAMColor(memory.heapMemoryUsage)
                 vramText.text = getVRAMText()
                 vramText.color = getVRAMColor(gpuInfo)
+                frameText.text = getFrameText()
             }
+
+            needsRedraw = true
+        }
+
+        // Multi-line input pushes the bottom of the scrollback up
+        val newMinY = minY + (Math.max(fontSize, input.height) - fontSize)
+        if (newMinY != viewMinY) {
+            viewMinY = newMinY
+            needsScrollbackUpdate = true
         }
+
+        if (needsScrollbackUpdate) {
+            needsScrollbackUpdate = false
+            updateScrollback()
+            needsRedraw = true
+        }
+    }
+
+    //<editor-fold defaultstate="collapsed" desc="Scrollback">
+    private fun lineHeight(line: Long) = history.getRows(line).size * fontSize
+
+    // Positive amounts scroll towards older output; walks at most as many lines as are scrolled past
+    private fun scroll(amount: Float) {
+        if (history.isEmpty) return
+        if (isFollowingOutput) {
+            isFollowingOutput = false
+            bottomLine = history.endLine - 1
+            bottomOffset = 0f
+        }
+
+        // Lines may have been dropped from the history since this was last called
+        if (bottomLine < history.firstLine) {
+            bottomLine = history.firstLine
+            bottomOffset = 0f
+        }
+
+        bottomOffset += amount
+        while (bottomOffset >= lineHeight(bottomLine) && bottomLine > history.firstLine) {
+            bottomOffset -= lineHeight(bottomLine)
+            bottomLine--
+        }
+        while (bottomOffset < 0f) {
+            if (bottomLine >= history.endLine - 1) {
+                isFollowingOutput = true
+                break
+            }
+
+            bottomLine++
+            bottomOffset += lineHeight(bottomLine)
+        }
+
+        needsScrollbackUpdate = true
+        if (isFollowingOutput) return
+
+        // Don't scroll past the oldest output
+        val viewHeight = maxY - viewMinY
+        var shown = -bottomOffset
+        var line = bottomLine
+        while (shown < viewHeight && line >= history.firstLine) {
+            shown += lineHeight(line)
+            line--
+        }
+
+        if (shown < viewHeight) scroll(shown - viewHeight)
+    }
+
+    private fun scrollToTop() {
+        if (history.isEmpty) return
+        isFollowingOutput = false
+        bottomLine = history.firstLine
+        bottomOffset = lineHeight(bottomLine) - (maxY - viewMinY)
+        scroll(0f)
+    }
+
+    // Lays out only the rows that are at least partly in view, wrapping any lines that haven't been shown before
+    private fun updateScrollback() {
+        if (history.isEmpty) {
+            shownHistoryVersion = history.version
+            scrollback.text = ""
+            return
+        }
+
+        if (!isFollowingOutput && bottomLine < history.firstLine) scroll(0f)
+        var line = if (isFollowingOutput) history.endLine - 1 else bottomLine
+        val offset = if (isFollowingOutput) 0f else bottomOffset
+        val hiddenRows = (offset / fontSize).toInt()
+        val shift = offset - hiddenRows * fontSize
+        var rowsLeft = Math.ceil(((maxY - viewMinY) + shift) / fontSize.toDouble()).toInt()
+
+        // Collected bottom to top, then reversed
+        val visible = ArrayList<String>(rowsLeft)
+        var rows = history.getRows(line)
+        var row = rows.size - 1 - hiddenRows
+        while (rowsLeft > 0) {
+            if (row < 0) {
+                if (line == history.firstLine) break
+                line--
+                rows = history.getRows(line)
+                row = rows.size - 1
+                continue
+            }
+
+            visible.add(rows[row])
+            row--
+            rowsLeft--
+        }
+
+        visible.reverse()
+        shownHistoryVersion = history.version
+        scrollback.text = visible.joinToString("\n")
+        scrollbackY = viewMinY - shift + scrollback.height
     }
+    //</editor-fold>
 
     private fun render() {
         glClear(GL_COLOR_BUFFER_BIT or GL_DEPTH_BUFFER_BIT or GL_STENCIL_BUFFER_BIT)
@@ -560,10 +738,11 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         glEnable(GL_BLEND)
 
         // Draw background
-        if (settings.showBackground) {
+        background?.let {
+            it.finish()
             glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA)
             glActiveTexture(GL_TEXTURE0)
-            glBindTexture(GL_TEXTURE_2D, bgTextureId)
+            glBindTexture(GL_TEXTURE_2D, it.textureId)
             glPushMatrix()
             glBegin(GL_QUADS)
             glColor4f(0.1f, 0.1f, 0.1f, 1f)
@@ -580,10 +759,10 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         }
 
         val inputHeight = Math.max(fontSize, input.height)
-        val memWidth = Math.max(ramText.width, vramText.width)
+        val memWidth = Math.max(ramText.width, Math.max(vramText.width, frameText.width))
 
         // Draw scrollback
-        val minY = minY + (inputHeight - fontSize)
+        val minY = viewMinY
         glBlendFunc(GL_ONE, GL_ONE_MINUS_SRC_ALPHA)
         glEnable(GL_STENCIL_TEST)
         glColorMask(false, false, false, false)
@@ -598,7 +777,7 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         glColorMask(true, true, true, true)
         glStencilFunc(GL_EQUAL, 1, 1)
         glStencilOp(GL_KEEP, GL_KEEP, GL_KEEP)
-        scrollback.draw(minX, minY + scrollback.height + scrollOffset)
+        scrollback.draw(minX, scrollbackY)
         glDisable(GL_STENCIL_TEST)
 
         // Draw input prompt
@@ -610,6 +789,7 @@ private class ConsoleOverlayInternal(private val context: CommandContext, mainCo
         if (settings.showMemoryUsage) {
             ramText.draw(50f, height - fontSize)
             vramText.draw(50f, height - fontSize * 2)
+            frameText.draw(50f, height - fontSize * 3)
         }
         if (Global.getSettings().isDevMode) devMode.draw(maxX - (50f + devMode.width), height - fontSize)
         curContext.draw(Math.max(150f + memWidth, (width / 2f) - (curContext.width / 2f)), height - fontSize)
@@ -6,6 +6,7 @@ import org.lazywizard.console.cheatmanager.CheatTarget
 import org.lazywizard.lazylib.JSONUtils
 import org.lwjgl.input.Keyboard
 import java.awt.Color
+import java.lang.ref.WeakReference
 import kotlin.reflect.KProperty
 
 /*
@@ -17,12 +18,15 @@ object ConsoleSettings {
     private val settings = JSONUtils.loadCommonJSON(CommonStrings.PATH_COMMON_DATA)
     var fontScaling by ScaledFloatPref("fontScaling", Global.getSettings().screenScaleMult, default = 1.0f)
     var commandSeparator by StringPref("commandSeparator", default = ";")
-    var maxScrollback by IntPref("maxScrollback", default = 10_000)
+    // Was stored in characters under "maxScrollback" before the overlay kept its history as lines
+    var maxScrollback by IntPref("maxScrollbackLines", default = 2_000)
     var typoCorrectionThreshold by FloatPref("typoCorrectionThreshold", default = 0.9f)
+    var commandFrameBudget by IntPref("commandFrameBudget", default = 4)
     var showBackground by BoolPref(
         "showBackground",
         default = (System.getProperty("os.name").startsWith("Windows", 0, true))
     )
+    var backgroundScale by FloatPref("backgroundScale", default = 0.5f) // Fraction of the screen's resolution
     var useHomeForStorage by BoolPref("useHomeForStorage", default = true)
     var devModeTogglesDebugFlags by BoolPref("devModeTogglesDebugFlags", default = true)
     var defaultCombatCheatTarget by EnumPref(
@@ -40,18 +44,44 @@ object ConsoleSettings {
         default = Keystroke(Keyboard.getKeyIndex("BACK"), true, false, false)
     )
     var cheatsAllowedForSave: Boolean
-        get() = if (Console.getContext()?.isCampaignAccessible!!)
-            !Global.getSector().persistentData.containsKey(
-                ShowSettings.SettingsDialog.genCheatId()
-            ) else true
-        // Can only be enabled, never disabled
+        get() {
+            if (!Console.getContext()?.isCampaignAccessible!!) return true
+
+            // Checked on every command lookup, so only hit persistent data once per loaded save
+            val persistentData = Global.getSector().persistentData
+            if (cheatCacheOwner?.get() !== persistentData) {
+                cheatsAllowedCached = !persistentData.containsKey(ShowSettings.SettingsDialog.genCheatId())
+                cheatCacheOwner = WeakReference(persistentData)
+            }
+
+            return cheatsAllowedCached
+        }
+        // Can only be disabled, never re-enabled
         @JvmSynthetic internal set(value) {
-            if (value) Global.getSector().persistentData[ShowSettings.SettingsDialog.genCheatId()] = System.nanoTime()
+            if (!value) Global.getSector().persistentData[ShowSettings.SettingsDialog.genCheatId()] = System.nanoTime()
+            cheatCacheOwner = null
+            CommandStore.incrementGeneration()
         }
+    private var cheatCacheOwner: WeakReference<Map<String, Any>>? = null
+    private var cheatsAllowedCached = true
+    // Changes every time a setting is saved, so anything built from the settings knows when to rebuild
+    internal var version = 0
+        private set
+
+    fun disableCheatsForSave() {
+        cheatsAllowedForSave = false
+    }
 
     fun resetToDefaults() {
         JSONUtils.clear(settings)
+        save()
+    }
+
+    // Remembered command output can depend on settings (Help shows the command separator, for example)
+    private fun save() {
         settings.save()
+        version++
+        CommandStore.incrementGeneration()
     }
 
     //<editor-fold defaultstate="collapsed" desc="Delegate implementations">
@@ -62,7 +92,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: String) {
             field = value
             settings.put(key, value)
-            settings.save()
+            save()
         }
     }
 
@@ -73,7 +103,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Boolean) {
             field = value
             settings.put(key, value)
-            settings.save()
+            save()
         }
     }
 
@@ -84,7 +114,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Int) {
             field = value
             settings.put(key, value)
-            settings.save()
+            save()
         }
     }
 
@@ -95,7 +125,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Float) {
             field = value
             settings.put(key, value)
-            settings.save()
+            save()
         }
     }
 
@@ -106,7 +136,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Float) {
             field = value * scaling
             settings.put(key, value)
-            settings.save()
+            save()
         }
     }
 
@@ -124,7 +154,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Color) {
             field = value
             settings.put(key, asString(value))
-            settings.save()
+            save()
         }
     }
 
@@ -139,7 +169,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: T) {
             field = value
             settings.put(key, value.name)
-            settings.save()
+            save()
         }
     }
 
@@ -163,7 +193,7 @@ object ConsoleSettings {
         operator fun setValue(consoleSettings: ConsoleSettings, property: KProperty<*>, value: Keystroke) {
             field = value
             settings.put(key, asString(value))
-            settings.save()
+            save()
         }
     }
     //</editor-fold>
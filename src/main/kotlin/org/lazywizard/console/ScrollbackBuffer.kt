@@ -0,0 +1,179 @@
+package org.lazywizard.console
+
+import org.lazywizard.lazylib.ui.LazyFont
+
+/**
+ * The console overlay's output history, kept between uses of the overlay. Output is stored as a ring buffer of lines,
+ * holding at most [ConsoleSettings.maxScrollback] lines before the oldest are dropped. Adding output and dropping old
+ * lines both take constant time per line, however long the game has been running.
+ *
+ * Output isn't copied when it's added. Each line is stored as a range of the [String] it arrived in, and is only
+ * copied out and word-wrapped into rows the first time it's scrolled into view. The rows are kept until the line is
+ * dropped or the overlay's font or width changes. Lines are addressed by a sequence number that keeps counting up as
+ * lines are added, so a line's number stays valid until it's dropped.
+ */
+internal class ScrollbackBuffer {
+    private var sources = arrayOfNulls<String>(ConsoleSettings.maxScrollback.coerceAtLeast(1))
+    private var starts = IntArray(sources.size)
+    private var ends = IntArray(sources.size)
+    private var rows = arrayOfNulls<Array<String>>(sources.size)
+    private var font: LazyFont? = null
+    private var fontSize = 0f
+    private var maxWidth = 0f
+
+    /** Sequence number of the oldest line. */
+    var firstLine = 0L
+        private set
+
+    /** Sequence number the next line added will have. */
+    var endLine = 0L
+        private set
+
+    /** How many rows have been wrapped so far, plus one for each line that hasn't been. */
+    var estimatedRows = 0
+        private set
+
+    /** Changes whenever lines are added, changed or dropped, or rewrapped. */
+    var version = 0
+        private set
+
+    val isEmpty get() = firstLine == endLine
+    val numLines get() = (endLine - firstLine).toInt()
+
+    private fun indexOf(line: Long) = (line % sources.size).toInt()
+
+    fun append(text: String) {
+        resizeIfNeeded()
+
+        var start = 0
+        if (isEmpty) {
+            // Every message starts with a newline, which shouldn't leave a blank line at the top
+            while (start < text.length && text[start].isWhitespace()) start++
+            if (start == text.length) return
+        } else {
+            // Output doesn't have to end in a newline, so the first part continues the newest line
+            // This is the only time a line is copied, and only happens for output that doesn't start on a new line
+            val end = text.indexOf('\n').let { if (it < 0) text.length else it }
+            if (end > 0) {
+                val newest = indexOf(endLine - 1)
+                setLine(newest, getLine(endLine - 1) + text.substring(0, end), 0, -1)
+                forgetRows(newest)
+            }
+
+            start = end + 1
+        }
+
+        while (start <= text.length) {
+            val end = text.indexOf('\n', start).let { if (it < 0) text.length else it }
+            addLine(text, start, end)
+            start = end + 1
+        }
+
+        version++
+    }
+
+    private fun addLine(source: String, start: Int, end: Int) {
+        if (numLines == sources.size) {
+            forgetRows(indexOf(firstLine))
+            estimatedRows--
+            firstLine++
+        }
+
+        val index = indexOf(endLine)
+        setLine(index, source, start, end)
+        rows[index] = null
+        estimatedRows++
+        endLine++
+    }
+
+    // An end of -1 means the rest of the source
+    private fun setLine(index: Int, source: String, start: Int, end: Int) {
+        sources[index] = source
+        starts[index] = start
+        ends[index] = if (end < 0) source.length else end
+    }
+
+    /** Returns the text of a line, unwrapped. */
+    fun getLine(line: Long): String {
+        val index = indexOf(line)
+        val source = sources[index] ?: return ""
+        return source.substring(starts[index], ends[index])
+    }
+
+    private fun forgetRows(index: Int) {
+        val wrapped = rows[index] ?: return
+        estimatedRows -= wrapped.size - 1
+        rows[index] = null
+    }
+
+    // Picks up changes to the maxScrollback setting, keeping the newest lines
+    private fun resizeIfNeeded() {
+        val capacity = ConsoleSettings.maxScrollback.coerceAtLeast(1)
+        if (capacity == sources.size) return
+
+        val newSources = arrayOfNulls<String>(capacity)
+        val newStarts = IntArray(capacity)
+        val newEnds = IntArray(capacity)
+        val newRows = arrayOfNulls<Array<String>>(capacity)
+        val newFirst = Math.max(firstLine, endLine - capacity)
+        for (line in firstLine until newFirst) forgetRows(indexOf(line))
+        for (line in newFirst until endLine) {
+            val oldIndex = indexOf(line)
+            val newIndex = (line % capacity).toInt()
+            newSources[newIndex] = sources[oldIndex]
+            newStarts[newIndex] = starts[oldIndex]
+            newEnds[newIndex] = ends[oldIndex]
+            newRows[newIndex] = rows[oldIndex]
+        }
+
+        estimatedRows -= (newFirst - firstLine).toInt()
+        sources = newSources
+        starts = newStarts
+        ends = newEnds
+        rows = newRows
+        firstLine = newFirst
+    }
+
+    fun clear() {
+        sources.fill(null)
+        rows.fill(null)
+        firstLine = endLine
+        estimatedRows = 0
+        version++
+    }
+
+    /** Sets how lines are wrapped. Rows wrapped with different settings are thrown away. */
+    fun setLayout(font: LazyFont, fontSize: Float, maxWidth: Float) {
+        if (font === this.font && fontSize == this.fontSize && maxWidth == this.maxWidth) return
+
+        this.font = font
+        this.fontSize = fontSize
+        this.maxWidth = maxWidth
+        rows.fill(null)
+        estimatedRows = numLines
+        version++
+    }
+
+    /** Returns a line word-wrapped into rows, wrapping it first if this is the first time it's been shown. */
+    fun getRows(line: Long): Array<String> {
+        val index = indexOf(line)
+        rows[index]?.let { return it }
+
+        val text = getLine(line)
+        val wrapped = font?.wrapString(text, fontSize, maxWidth, Float.MAX_VALUE, 0)?.split('\n')?.toTypedArray()
+            ?: arrayOf(text)
+        rows[index] = wrapped
+        estimatedRows += wrapped.size - 1
+        return wrapped
+    }
+
+    override fun toString(): String {
+        val sb = StringBuilder()
+        for (line in firstLine until endLine) {
+            val index = indexOf(line)
+            sb.append(sources[index], starts[index], ends[index]).append('\n')
+        }
+
+        return sb.toString()
+    }
+}